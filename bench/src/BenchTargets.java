@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * This class holds the lexer operations the JMH benchmarks measure. JMH only
+ * accepts benchmark classes in a named package, and a named package can't
+ * refer to the lexer's classes in the default package, so the benchmarks in
+ * package bench call these methods through method handles (see
+ * bench.Targets). Lexers and tries are passed around as Object for the same
+ * reason.
+ */
+public class BenchTargets {
+
+	/**
+	 * Lexes an in-memory text to the end
+	 *
+	 * @param text - source text
+	 * @param length - number of chars of text to lex
+	 * @param tableDriven - true for the DFA scanner, false for the hand-written one
+	 * @return number of tokens in the token buffer
+	 * @throws IOException
+	 */
+	public static long lexAll(char[] text, int length, boolean tableDriven) throws IOException {
+		ToyLexer lexer = new ToyLexer(text, length);
+		lexer.setTableDriven(tableDriven);
+		while (!lexer.isEOF())
+			lexer.scanNextToken();
+		return lexer.getTokens().size();
+	}
+
+
+	/**
+	 * Lexes a file in streaming mode, so memory use does not depend on the
+	 * file size
+	 *
+	 * @param file - source file
+	 * @return number of tokens handed out
+	 * @throws IOException
+	 */
+	public static long streamFile(Path file) throws IOException {
+		ToyLexer lexer = new ToyLexer(file);
+		lexer.setStreaming(true);
+		long count = 0;
+		while (lexer.nextToken() != ToyLexer.ToyToken._eof)
+			count++;
+		return count;
+	}
+
+
+	/**
+	 * Lexes an in-memory text and keeps the lexer
+	 *
+	 * @param text - source text
+	 * @param length - number of chars of text to lex
+	 * @return the finished lexer
+	 * @throws IOException
+	 */
+	public static Object lexed(char[] text, int length) throws IOException {
+		ToyLexer lexer = new ToyLexer(text, length);
+		while (!lexer.isEOF())
+			lexer.scanNextToken();
+		return lexer;
+	}
+
+
+	/**
+	 * Prints the tokens of a lexer made by lexed()
+	 *
+	 * @param lexer - finished lexer
+	 */
+	public static void dumpTokens(Object lexer) {
+		((ToyLexer) lexer).dumpTokens();
+	}
+
+
+	/**
+	 * Writes the tokens of a lexer made by lexed() to an Appendable
+	 *
+	 * @param lexer - finished lexer
+	 * @param out - where the tokens are written
+	 * @throws IOException
+	 */
+	public static void dumpTokensTo(Object lexer, Appendable out) throws IOException {
+		((ToyLexer) lexer).dumpTokens(out);
+	}
+
+
+	/**
+	 * Inserts words into a new trie
+	 *
+	 * @param capacityHint - capacity hint for the trie
+	 * @param buf - array holding the words
+	 * @param offsets - index of the first char of each word
+	 * @param lengths - length of each word
+	 * @return sum of the symbol IDs, so the work can't be optimized away
+	 */
+	public static long trieInsert(int capacityHint, char[] buf, int[] offsets, int[] lengths) {
+		ToyLexer.Trie trie = new ToyLexer.Trie(capacityHint);
+		long sum = 0;
+		for (int i = 0; i < offsets.length; i++)
+			sum += trie.insert(buf, offsets[i], lengths[i]);
+		return sum;
+	}
+
+
+	/**
+	 * Inserts words into a new symbol table of the given kind
+	 *
+	 * @param kind - "trie", "hash" or "darray" (see SymbolTable.create)
+	 * @param buf - array holding the words
+	 * @param offsets - index of the first char of each word
+	 * @param lengths - length of each word
+	 * @return sum of the symbol IDs, so the work can't be optimized away
+	 */
+	public static long symbolInsert(String kind, char[] buf, int[] offsets, int[] lengths) {
+		SymbolTable table = SymbolTable.create(kind);
+		long sum = 0;
+		for (int i = 0; i < offsets.length; i++)
+			sum += table.insert(buf, offsets[i], lengths[i]);
+		return sum;
+	}
+
+
+	/**
+	 * Lexes an in-memory text to the end with the given kind of symbol table
+	 *
+	 * @param text - source text
+	 * @param length - number of chars of text to lex
+	 * @param kind - "trie", "hash" or "darray" (see SymbolTable.create)
+	 * @return number of tokens in the token buffer
+	 * @throws IOException
+	 */
+	public static long lexWithSymbolTable(char[] text, int length, String kind) throws IOException {
+		ToyLexer lexer = new ToyLexer(text, length);
+		if (!kind.equals("trie"))
+			lexer.setSymbolTable(SymbolTable.create(kind));
+		while (!lexer.isEOF())
+			lexer.scanNextToken();
+		return lexer.getTokens().size();
+	}
+
+
+	/**
+	 * Classifies words as keywords or identifiers
+	 *
+	 * @param buf - array holding the words
+	 * @param offsets - index of the first char of each word
+	 * @param lengths - length of each word
+	 * @return sum of the token numbers, so the work can't be optimized away
+	 */
+	public static long classifyWords(char[] buf, int[] offsets, int[] lengths) {
+		long sum = 0;
+		for (int i = 0; i < offsets.length; i++)
+			sum += ToyLexer.classifyWord(buf, offsets[i], lengths[i]).getTokenNumber();
+		return sum;
+	}
+
+} // end of class BenchTargets
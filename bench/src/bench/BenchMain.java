@@ -0,0 +1,30 @@
+package bench;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the JMH benchmarks with the usual JMH command line. Unless a result
+ * format is given with -rf, results are written as JSON (by default to
+ * jmh-&lt;date&gt;-&lt;time&gt;.json) so runs can be compared later.
+ */
+public class BenchMain {
+
+	public static void main(String[] args) throws Exception {
+		List<String> options = new ArrayList<String>(Arrays.asList(args));
+		if (!options.contains("-rf")) {
+			options.add(0, "-rf");
+			options.add(1, "json");
+			if (!options.contains("-rff")) {
+				String time = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+				options.add(2, "-rff");
+				options.add(3, "jmh-" + time + ".json");
+			}
+		}
+		org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+	}
+
+} // end of class BenchMain
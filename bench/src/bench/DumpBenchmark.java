@@ -0,0 +1,80 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of dumpTokens() for an already lexed input. System.out is sent
+ * to a stream that drops everything, so this measures building and encoding
+ * the output and not the console. dumpToWriter measures building the output
+ * alone, written to a Writer that drops it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DumpBenchmark {
+	@Param({ "1MB" })
+	public String size;
+
+	@Param({ "42" })
+	public long seed;
+
+	@Param({ ToySourceGenerator.DEFAULT_MIX })
+	public String mix;
+
+	private Object 		lexer;
+	private long 		bytes;
+	private long 		tokens;
+	private PrintStream systemOut;
+	private Writer 		nullWriter = Writer.nullWriter();
+
+
+	@Setup
+	public void setup() throws Throwable {
+		char[] text = Workloads.text(size, seed, mix);
+		bytes = text.length;
+		tokens = Targets.lexAll(text, text.length, true);
+		lexer = Targets.lexed(text, text.length);
+		systemOut = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	}
+
+
+	@TearDown
+	public void tearDown() {
+		System.setOut(systemOut);
+	}
+
+
+	@Benchmark
+	public void dumpTokens(ScanCounters counters) throws Throwable {
+		Targets.dumpTokens(lexer);
+		counters.add(bytes, tokens);
+	}
+
+
+	@Benchmark
+	public void dumpToWriter(ScanCounters counters) throws Throwable {
+		Targets.dumpTokensTo(lexer, nullWriter);
+		counters.add(bytes, tokens);
+	}
+
+} // end of class DumpBenchmark
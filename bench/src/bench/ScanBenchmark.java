@@ -0,0 +1,57 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of scanNextToken() over an in-memory input, from creating the
+ * lexer to the end of the input, with the table-driven and the hand-written
+ * scanner.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ScanBenchmark {
+	@Param({ "1KB", "1MB", "32MB" })
+	public String size;
+
+	@Param({ "42" })
+	public long seed;
+
+	@Param({ ToySourceGenerator.DEFAULT_MIX })
+	public String mix;
+
+	@Param({ "dfa", "hand" })
+	public String scanner;
+
+	private char[] text;
+
+
+	@Setup
+	public void setup() {
+		text = Workloads.text(size, seed, mix);
+	}
+
+
+	@Benchmark
+	public long scan(ScanCounters counters) throws Throwable {
+		long tokens = Targets.lexAll(text, text.length, scanner.equals("dfa"));
+		counters.add(text.length, tokens);
+		return tokens;
+	}
+
+} // end of class ScanBenchmark
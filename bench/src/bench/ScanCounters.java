@@ -0,0 +1,38 @@
+package bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Extra throughput figures for the scanning benchmarks. JMH reports each
+ * counter as a rate in the benchmark's time unit, so with seconds these come
+ * out as MB/s and tokens/s next to the ops/s score.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ScanCounters {
+	private static final double MEGABYTE = 1024.0 * 1024.0;
+
+	public long bytes;
+	public long tokens;
+
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		bytes = 0;
+		tokens = 0;
+	}
+
+
+	public double megabytes() { return bytes / MEGABYTE; }
+
+
+	void add(long inputBytes, long inputTokens) {
+		bytes += inputBytes;
+		tokens += inputTokens;
+	}
+
+} // end of class ScanCounters
@@ -0,0 +1,58 @@
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of lexing a memory mapped file in streaming mode. Memory use
+ * does not grow with the file, so this is the benchmark for the large sizes
+ * (run with -p size=1GB).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StreamBenchmark {
+	@Param({ "1MB", "64MB" })
+	public String size;
+
+	@Param({ "42" })
+	public long seed;
+
+	@Param({ ToySourceGenerator.DEFAULT_MIX })
+	public String mix;
+
+	private Path file;
+	private long bytes;
+
+
+	@Setup
+	public void setup() throws Exception {
+		file = Workloads.file(size, seed, mix);
+		bytes = Files.size(file);
+	}
+
+
+	@Benchmark
+	public long stream(ScanCounters counters) throws Throwable {
+		long tokens = Targets.streamFile(file);
+		counters.add(bytes, tokens);
+		return tokens;
+	}
+
+} // end of class StreamBenchmark
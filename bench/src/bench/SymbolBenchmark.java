@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost per word of the symbol table and of keyword classification. The words
+ * are all the words of a generated source, so they repeat the way names in a
+ * real program do and include keywords.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SymbolBenchmark {
+	private static final int WORDS = 100_000;
+
+	@Param({ "42" })
+	public long seed;
+
+	@Param({ ToySourceGenerator.DEFAULT_MIX })
+	public String mix;
+
+	private char[] 	buf;
+	private int[] 	offsets;
+	private int[] 	lengths;
+
+
+	/**
+	 * Takes the first WORDS words of a generated text
+	 */
+	@Setup
+	public void setup() {
+		char[] text = Workloads.text("2MB", seed, mix);
+		Workloads.Words words = new Workloads.Words(text);
+		if (words.offsets.length < WORDS)
+			throw new IllegalStateException("only " + words.offsets.length + " words generated");
+		buf = words.buf;
+		offsets = Arrays.copyOf(words.offsets, WORDS);
+		lengths = Arrays.copyOf(words.lengths, WORDS);
+	}
+
+
+	/**
+	 * Inserts the words into an empty trie sized the way the lexer sizes it
+	 * for the text the words came from
+	 */
+	@Benchmark
+	@OperationsPerInvocation(WORDS)
+	public long trieInsert() throws Throwable {
+		return Targets.trieInsert(offsets[WORDS - 1] / 16, buf, offsets, lengths);
+	}
+
+
+	@Benchmark
+	@OperationsPerInvocation(WORDS)
+	public long classifyWord() throws Throwable {
+		return Targets.classifyWords(buf, offsets, lengths);
+	}
+
+} // end of class SymbolBenchmark
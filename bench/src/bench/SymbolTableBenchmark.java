@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the kinds of symbol table (see SymbolTable): cost per word of
+ * inserting the words of a generated source into an empty table, and time
+ * to lex the whole source with each kind of table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SymbolTableBenchmark {
+	private static final int WORDS = 100_000;
+
+	@Param({ "42" })
+	public long seed;
+
+	@Param({ ToySourceGenerator.DEFAULT_MIX })
+	public String mix;
+
+	@Param({ "trie", "hash", "darray" })
+	public String table;
+
+	private char[] 	text;
+	private char[] 	buf;
+	private int[] 	offsets;
+	private int[] 	lengths;
+
+
+	/**
+	 * Takes the first WORDS words of a generated text
+	 */
+	@Setup
+	public void setup() {
+		text = Workloads.text("2MB", seed, mix);
+		Workloads.Words words = new Workloads.Words(text);
+		if (words.offsets.length < WORDS)
+			throw new IllegalStateException("only " + words.offsets.length + " words generated");
+		buf = words.buf;
+		offsets = Arrays.copyOf(words.offsets, WORDS);
+		lengths = Arrays.copyOf(words.lengths, WORDS);
+	}
+
+
+	@Benchmark
+	@OperationsPerInvocation(WORDS)
+	public long insert() throws Throwable {
+		return Targets.symbolInsert(table, buf, offsets, lengths);
+	}
+
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public long lex() throws Throwable {
+		return Targets.lexWithSymbolTable(text, text.length, table);
+	}
+
+} // end of class SymbolTableBenchmark
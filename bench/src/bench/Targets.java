@@ -0,0 +1,90 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Path;
+
+/**
+ * Method handles for the operations in BenchTargets, which is in the default
+ * package and can't be named from here. The handles are static finals, so
+ * the JIT compiler treats them as constants and inlines the call the same as
+ * a direct one.
+ */
+final class Targets {
+	private static final MethodHandle LEX_ALL;
+	private static final MethodHandle STREAM_FILE;
+	private static final MethodHandle LEXED;
+	private static final MethodHandle DUMP_TOKENS;
+	private static final MethodHandle DUMP_TOKENS_TO;
+	private static final MethodHandle TRIE_INSERT;
+	private static final MethodHandle SYMBOL_INSERT;
+	private static final MethodHandle LEX_WITH_SYMBOL_TABLE;
+	private static final MethodHandle CLASSIFY_WORDS;
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			Class<?> c = Class.forName("BenchTargets");
+			LEX_ALL = lookup.findStatic(c, "lexAll",
+					MethodType.methodType(long.class, char[].class, int.class, boolean.class));
+			STREAM_FILE = lookup.findStatic(c, "streamFile",
+					MethodType.methodType(long.class, Path.class));
+			LEXED = lookup.findStatic(c, "lexed",
+					MethodType.methodType(Object.class, char[].class, int.class));
+			DUMP_TOKENS = lookup.findStatic(c, "dumpTokens",
+					MethodType.methodType(void.class, Object.class));
+			DUMP_TOKENS_TO = lookup.findStatic(c, "dumpTokensTo",
+					MethodType.methodType(void.class, Object.class, Appendable.class));
+			TRIE_INSERT = lookup.findStatic(c, "trieInsert",
+					MethodType.methodType(long.class, int.class, char[].class, int[].class, int[].class));
+			SYMBOL_INSERT = lookup.findStatic(c, "symbolInsert",
+					MethodType.methodType(long.class, String.class, char[].class, int[].class, int[].class));
+			LEX_WITH_SYMBOL_TABLE = lookup.findStatic(c, "lexWithSymbolTable",
+					MethodType.methodType(long.class, char[].class, int.class, String.class));
+			CLASSIFY_WORDS = lookup.findStatic(c, "classifyWords",
+					MethodType.methodType(long.class, char[].class, int[].class, int[].class));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Targets() {}
+
+
+	static long lexAll(char[] text, int length, boolean tableDriven) throws Throwable {
+		return (long) LEX_ALL.invokeExact(text, length, tableDriven);
+	}
+
+	static long streamFile(Path file) throws Throwable {
+		return (long) STREAM_FILE.invokeExact(file);
+	}
+
+	static Object lexed(char[] text, int length) throws Throwable {
+		return (Object) LEXED.invokeExact(text, length);
+	}
+
+	static void dumpTokens(Object lexer) throws Throwable {
+		DUMP_TOKENS.invokeExact(lexer);
+	}
+
+	static void dumpTokensTo(Object lexer, Appendable out) throws Throwable {
+		DUMP_TOKENS_TO.invokeExact(lexer, out);
+	}
+
+	static long trieInsert(int capacityHint, char[] buf, int[] offsets, int[] lengths) throws Throwable {
+		return (long) TRIE_INSERT.invokeExact(capacityHint, buf, offsets, lengths);
+	}
+
+	static long symbolInsert(String kind, char[] buf, int[] offsets, int[] lengths) throws Throwable {
+		return (long) SYMBOL_INSERT.invokeExact(kind, buf, offsets, lengths);
+	}
+
+	static long lexWithSymbolTable(char[] text, int length, String kind) throws Throwable {
+		return (long) LEX_WITH_SYMBOL_TABLE.invokeExact(text, length, kind);
+	}
+
+	static long classifyWords(char[] buf, int[] offsets, int[] lengths) throws Throwable {
+		return (long) CLASSIFY_WORDS.invokeExact(buf, offsets, lengths);
+	}
+
+} // end of class Targets
@@ -0,0 +1,434 @@
+package bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * This class generates Toy source text for the benchmarks. The text is made of
+ * classes and functions like the ones in input1.txt and input2.txt, with
+ * declarations, assignments, calls, if/while blocks, comments, numeric
+ * literals and string constants. The same seed, size and mix always give the
+ * same text. Lines end in "\r\n" like the sample inputs, and only ASCII is
+ * written, so the size in chars is the size in bytes.
+ *
+ * Usage: java bench.ToySourceGenerator [-size 1MB] [-seed n] [-mix spec] file
+ */
+public class ToySourceGenerator {
+	public static final String DEFAULT_MIX = "id=50,num=25,str=10,comment=10";
+
+	private static final String NEWLINE = "\r\n";
+	private static final int NAME_POOL_SIZE = 4096;
+	private static final String[] TYPES = { "int", "double", "boolean", "string" };
+	private static final String[] OPERATORS = {
+		"+", "-", "*", "/", "%", "<", "<=", ">", ">=", "==", "!=", "&&", "||"
+	};
+	private static final String[] SYLLABLES = {
+		"to", "tal", "cnt", "idx", "val", "sum", "max", "min", "buf", "len",
+		"node", "next", "prev", "key", "item", "acc", "tmp", "res", "pos", "x"
+	};
+	private static final String[] WORDS = {
+		"the", "result", "is", "value", "of", "factorial", "have", "fun", "hello",
+		"world", "total", "error", "done", "loop", "count"
+	};
+
+	private final Random 	random;
+	private final Mix 		mix;
+	private final String[] 	names;
+	private final StringBuilder line = new StringBuilder(256);
+	private int 			depth;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param seed - seed for the random choices
+	 * @param mix - weights of the kinds of tokens
+	 */
+	public ToySourceGenerator(long seed, Mix mix) {
+		this.random = new Random(seed);
+		this.mix = mix;
+		this.names = new String[NAME_POOL_SIZE];
+		for (int i = 0; i < names.length; i++)
+			names[i] = makeName(i);
+	}
+
+
+	public static void main(String[] args) throws IOException {
+		long size = parseSize("1MB");
+		long seed = 42;
+		Mix mix = Mix.parse(DEFAULT_MIX);
+		String file = null;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-size":	size = parseSize(args[++i]); 		break;
+			case "-seed":	seed = Long.parseLong(args[++i]); 	break;
+			case "-mix":	mix = Mix.parse(args[++i]); 		break;
+			default:		file = args[i];
+			}
+		}
+		if (file == null) {
+			System.err.println("usage: java bench.ToySourceGenerator [-size 1MB] [-seed n] "
+					+ "[-mix " + DEFAULT_MIX + "] file");
+			System.exit(2);
+		}
+		new ToySourceGenerator(seed, mix).writeFile(Paths.get(file), size);
+	}
+
+
+	/**
+	 * Writes a source file of the given size
+	 *
+	 * @param file - file to be written
+	 * @param size - number of bytes to write, at least
+	 * @throws IOException
+	 */
+	public void writeFile(Path file, long size) throws IOException {
+		try (Writer out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+			generate(out, size);
+		}
+	}
+
+
+	/**
+	 * Generates source text in memory
+	 *
+	 * @param size - number of chars to generate, at least
+	 * @return the text
+	 */
+	public char[] generate(int size) {
+		StringBuilder out = new StringBuilder(size + 256);
+		try {
+			generate(out, size);
+		} catch (IOException e) {
+			throw new AssertionError(e);	// StringBuilder does not throw
+		}
+		char[] text = new char[out.length()];
+		out.getChars(0, text.length, text, 0);
+		return text;
+	}
+
+
+	/**
+	 * Writes whole top level units (classes and functions) until at least
+	 * size chars are written.
+	 *
+	 * @param out - where the text goes
+	 * @param size - number of chars to write, at least
+	 * @throws IOException
+	 */
+	public void generate(Appendable out, long size) throws IOException {
+		long written = 0;
+		while (written < size)
+			written += unit(out);
+	}
+
+
+	/**
+	 * Writes a class with some fields and methods, or a single function
+	 *
+	 * @return number of chars written
+	 */
+	private long unit(Appendable out) throws IOException {
+		long written = 0;
+		depth = 0;
+		if (random.nextInt(3) == 0) {
+			line.append("class ").append(name()).append(" {");
+			written += flush(out);
+			depth++;
+			int fields = 1 + random.nextInt(6);
+			for (int i = 0; i < fields; i++) {
+				written += comments(out);
+				line.append(type()).append(' ').append(name()).append(';');
+				written += flush(out);
+			}
+			int methods = 1 + random.nextInt(4);
+			for (int i = 0; i < methods; i++)
+				written += function(out);
+			depth--;
+			line.append('}');
+			written += flush(out);
+		} else {
+			written += function(out);
+		}
+		return written;
+	}
+
+
+	private long function(Appendable out) throws IOException {
+		long written = comments(out);
+		line.append(random.nextInt(4) == 0 ? "void" : type()).append(' ').append(name()).append(" (");
+		int params = random.nextInt(4);
+		for (int i = 0; i < params; i++) {
+			if (i > 0)
+				line.append(", ");
+			line.append(type()).append(' ').append(name());
+		}
+		line.append(") {");
+		written += flush(out);
+		written += block(out, 3 + random.nextInt(20));
+		line.append('}');
+		return written + flush(out);
+	}
+
+
+	private long block(Appendable out, int statements) throws IOException {
+		long written = 0;
+		depth++;
+		for (int i = 0; i < statements; i++) {
+			written += comments(out);
+			written += statement(out);
+		}
+		depth--;
+		return written;
+	}
+
+
+	private long statement(Appendable out) throws IOException {
+		int choice = random.nextInt(100);
+		if (choice < mix.strings) {
+			line.append("println (");
+			int args = 1 + random.nextInt(3);
+			for (int i = 0; i < args; i++) {
+				if (i > 0)
+					line.append(", ");
+				if (random.nextBoolean())
+					string();
+				else
+					expression(1);
+			}
+			line.append(");");
+		} else if (choice < mix.strings + 10 && depth < 4) {
+			line.append(random.nextBoolean() ? "if (" : "while (");
+			expression(2);
+			line.append(") {");
+			long written = flush(out);
+			written += block(out, 1 + random.nextInt(5));
+			line.append('}');
+			return written + flush(out);
+		} else if (choice < mix.strings + 20) {
+			line.append(type()).append(' ').append(name()).append(';');
+		} else if (choice < mix.strings + 25) {
+			line.append("return ");
+			expression(2);
+			line.append(';');
+		} else {
+			line.append(name()).append(" = ");
+			expression(3);
+			line.append(';');
+		}
+		return flush(out);
+	}
+
+
+	/**
+	 * Appends an expression of up to terms operands to the current line
+	 */
+	private void expression(int terms) {
+		int n = 1 + random.nextInt(terms);
+		for (int i = 0; i < n; i++) {
+			if (i > 0)
+				line.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+			int choice = random.nextInt(mix.identifiers + mix.numbers);
+			if (choice < mix.identifiers) {
+				line.append(name());
+				if (random.nextInt(8) == 0) {
+					line.append('(');
+					expression(1);
+					line.append(')');
+				}
+			} else {
+				number();
+			}
+		}
+	}
+
+
+	private void number() {
+		switch (random.nextInt(6)) {
+		case 0:
+			line.append("0x").append(Integer.toHexString(random.nextInt(1 << 16)));
+			break;
+		case 1:
+			line.append(random.nextInt(1000)).append('.').append(random.nextInt(1000));
+			break;
+		case 2:
+			line.append(random.nextInt(100000)).append(random.nextBoolean() ? "E+" : "e-")
+				.append(random.nextInt(20));
+			break;
+		default:
+			line.append(random.nextInt(random.nextBoolean() ? 10 : 100000));
+		}
+	}
+
+
+	private void string() {
+		line.append('"');
+		int words = 1 + random.nextInt(6);
+		for (int i = 0; i < words; i++) {
+			if (i > 0)
+				line.append(' ');
+			line.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		line.append('"');
+	}
+
+
+	/**
+	 * Writes a line or block comment, with probability given by the mix
+	 *
+	 * @return number of chars written
+	 */
+	private long comments(Appendable out) throws IOException {
+		if (random.nextInt(100) >= mix.comments)
+			return 0;
+		if (random.nextBoolean()) {
+			line.append("// ");
+			words(3 + random.nextInt(8));
+			return flush(out);
+		}
+		long written = 0;
+		line.append("/* ");
+		int lines = 1 + random.nextInt(3);
+		for (int i = 0; i < lines; i++) {
+			if (i > 0)
+				written += flush(out);
+			words(3 + random.nextInt(8));
+		}
+		line.append(" */");
+		return written + flush(out);
+	}
+
+
+	private void words(int n) {
+		for (int i = 0; i < n; i++) {
+			if (i > 0)
+				line.append(' ');
+			line.append(random.nextInt(4) == 0 ? name() : WORDS[random.nextInt(WORDS.length)]);
+		}
+	}
+
+
+	/**
+	 * Picks a name from the pool. Low indexes are picked far more often,
+	 * so a few names are used a lot and most are used rarely.
+	 */
+	private String name() {
+		double r = random.nextDouble();
+		return names[(int) (r * r * r * names.length)];
+	}
+
+
+	private String type() {
+		return TYPES[random.nextInt(TYPES.length)];
+	}
+
+
+	private String makeName(int i) {
+		StringBuilder b = new StringBuilder();
+		int parts = 1 + random.nextInt(3);
+		for (int p = 0; p < parts; p++) {
+			String s = SYLLABLES[random.nextInt(SYLLABLES.length)];
+			if (p > 0 && random.nextBoolean())
+				s = Character.toUpperCase(s.charAt(0)) + s.substring(1);
+			b.append(s);
+		}
+		if (random.nextInt(3) == 0)
+			b.append(random.nextBoolean() ? "_" : "").append(i);
+		return b.toString();
+	}
+
+
+	/**
+	 * Writes the current line with its indentation and clears it
+	 *
+	 * @return number of chars written
+	 */
+	private long flush(Appendable out) throws IOException {
+		for (int i = 0; i < depth; i++)
+			out.append('\t');
+		out.append(line).append(NEWLINE);
+		long written = depth + line.length() + NEWLINE.length();
+		line.setLength(0);
+		return written;
+	}
+
+
+	/**
+	 * Parses a size like 512, 1KB, 64MB or 1GB
+	 *
+	 * @param size - size with an optional KB, MB or GB suffix
+	 * @return size in bytes
+	 */
+	public static long parseSize(String size) {
+		String s = size.trim().toUpperCase();
+		long unit = 1;
+		if (s.endsWith("KB"))
+			unit = 1L << 10;
+		else if (s.endsWith("MB"))
+			unit = 1L << 20;
+		else if (s.endsWith("GB"))
+			unit = 1L << 30;
+		if (unit > 1)
+			s = s.substring(0, s.length() - 2);
+		return Long.parseLong(s.trim()) * unit;
+	}
+
+
+	/**
+	 * Weights of the kinds of tokens in the generated text. Identifiers and
+	 * numbers are relative weights of the operands in expressions. Strings is
+	 * the percentage of statements that are println calls with string
+	 * constants, and comments the percentage of lines that get a comment
+	 * before them.
+	 */
+	public static class Mix {
+		final int identifiers;
+		final int numbers;
+		final int strings;
+		final int comments;
+
+		Mix(int identifiers, int numbers, int strings, int comments) {
+			if (identifiers < 0 || numbers < 0 || identifiers + numbers == 0)
+				throw new IllegalArgumentException("need a positive weight for id or num");
+			if (strings < 0 || strings > 70 || comments < 0 || comments > 100)
+				throw new IllegalArgumentException("str must be 0..70 and comment 0..100");
+			this.identifiers = identifiers;
+			this.numbers = numbers;
+			this.strings = strings;
+			this.comments = comments;
+		}
+
+
+		/**
+		 * Parses a mix like "id=50,num=25,str=10,comment=10". Kinds that are
+		 * left out keep their default weight.
+		 *
+		 * @param spec - comma separated kind=weight pairs
+		 * @return the mix
+		 */
+		public static Mix parse(String spec) {
+			int id = 50, num = 25, str = 10, comment = 10;
+			for (String part : spec.split(",")) {
+				String[] kv = part.trim().split("=");
+				if (kv.length != 2)
+					throw new IllegalArgumentException("bad mix entry: " + part);
+				int weight = Integer.parseInt(kv[1].trim());
+				switch (kv[0].trim()) {
+				case "id":		id = weight; 		break;
+				case "num":		num = weight; 		break;
+				case "str":		str = weight; 		break;
+				case "comment":	comment = weight; 	break;
+				default:		throw new IllegalArgumentException("unknown mix kind: " + kv[0]);
+				}
+			}
+			return new Mix(id, num, str, comment);
+		}
+	}
+
+} // end of class ToySourceGenerator
@@ -0,0 +1,103 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Generated inputs shared by the benchmarks. Files are written to the temp
+ * directory once and reused by later runs with the same size, seed and mix.
+ */
+final class Workloads {
+
+	private Workloads() {}
+
+
+	/**
+	 * Generates source text in memory
+	 *
+	 * @param size - size like 1KB or 16MB
+	 * @param seed - generator seed
+	 * @param mix - generator mix
+	 * @return the text
+	 */
+	static char[] text(String size, long seed, String mix) {
+		long chars = ToySourceGenerator.parseSize(size);
+		if (chars > Integer.MAX_VALUE - 1024)
+			throw new IllegalArgumentException("in-memory inputs are limited to 2 GB, use a file: " + size);
+		return new ToySourceGenerator(seed, ToySourceGenerator.Mix.parse(mix)).generate((int) chars);
+	}
+
+
+	/**
+	 * Returns a generated source file, writing it first if needed
+	 *
+	 * @param size - size like 1MB or 1GB
+	 * @param seed - generator seed
+	 * @param mix - generator mix
+	 * @return path of the file
+	 * @throws IOException
+	 */
+	static Path file(String size, long seed, String mix) throws IOException {
+		String name = "toy-bench-" + size + "-" + seed + "-" + mix.replaceAll("[^A-Za-z0-9]", "") + ".toy";
+		Path file = Paths.get(System.getProperty("java.io.tmpdir"), name);
+		if (!Files.exists(file)) {
+			Path tmp = Files.createTempFile(file.getParent(), name, ".part");
+			new ToySourceGenerator(seed, ToySourceGenerator.Mix.parse(mix))
+				.writeFile(tmp, ToySourceGenerator.parseSize(size));
+			Files.move(tmp, file);
+		}
+		return file;
+	}
+
+
+	/**
+	 * Words (runs of letters, digits and underscores starting with a letter)
+	 * of a text, as offsets and lengths into the text. Includes keywords and
+	 * words inside comments and strings.
+	 */
+	static final class Words {
+		final char[] 	buf;
+		final int[] 	offsets;
+		final int[] 	lengths;
+
+		Words(char[] text) {
+			int count = 0;
+			for (int i = 0; i < text.length; i = skipWord(text, i)) {
+				if (isLetter(text[i]))
+					count++;
+			}
+			buf = text;
+			offsets = new int[count];
+			lengths = new int[count];
+			int n = 0;
+			for (int i = 0; i < text.length; ) {
+				int end = skipWord(text, i);
+				if (isLetter(text[i])) {
+					offsets[n] = i;
+					lengths[n++] = end - i;
+				}
+				i = end;
+			}
+		}
+
+		/**
+		 * @return index after the word starting at i, or i + 1 if no word starts there
+		 */
+		private static int skipWord(char[] text, int i) {
+			if (!isLetter(text[i]))
+				return i + 1;
+			int j = i + 1;
+			while (j < text.length && (isLetter(text[j]) || text[j] == '_'
+					|| (text[j] >= '0' && text[j] <= '9')))
+				j++;
+			return j;
+		}
+
+		private static boolean isLetter(char c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+		}
+	}
+
+} // end of class Workloads
@@ -0,0 +1,60 @@
+import java.io.IOException;
+
+/**
+ * This class holds what the symbol tables have in common: the insert and
+ * probe counters LexMetrics reads, and the dump of a table whose names are
+ * kept in a StringPool under their symbol IDs. What counts as a probe is up
+ * to each table, which reports it through countProbes().
+ */
+abstract class AbstractSymbolTable implements SymbolTable {
+	private long 	inserts;	// calls to insert()
+	private long 	probes;
+	private int 	maxProbes;	// most probes one insert() made
+
+
+	public long getInserts() { return inserts; }
+	public long getProbes() { return probes; }
+	public int getMaxProbes() { return maxProbes; }
+
+
+	/**
+	 * Counts one insert() that made the given number of probes
+	 *
+	 * @param links - probes made by the insert
+	 */
+	protected final void countProbes(int links) {
+		inserts++;
+		probes += links;
+		if (links > maxProbes)
+			maxProbes = links;
+	}
+
+
+	/**
+	 * Writes out the names of a pool with their symbol IDs, one per line
+	 *
+	 * @param names - pool whose indexes are the symbol IDs
+	 * @param out - where the names are written, left open
+	 * @throws IOException
+	 */
+	static void dumpNames(StringPool names, Appendable out) throws IOException {
+		StringBuilder sb = new StringBuilder(16 * 1024);
+		char[] name = new char[64];
+		for (int id = 0; id < names.size(); id++) {
+			String n = Integer.toString(id);
+			for (int pad = n.length(); pad < 6; pad++)
+				sb.append(' ');
+			int len = names.length(id);
+			if (len > name.length)
+				name = new char[len];
+			names.getChars(id, name, 0);
+			sb.append(n).append("  ").append(name, 0, len).append('\n');
+			if (sb.length() >= 8 * 1024) {
+				out.append(sb);
+				sb.setLength(0);
+			}
+		}
+		out.append(sb);
+	}
+
+} // end of class AbstractSymbolTable
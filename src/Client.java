@@ -6,28 +6,36 @@
  * 
  * INSTRUCTIONS: Compile both Client.java and ToyLexer.java files and make sure
  * to include both "input1.txt" and "input2.txt" in the same directory.
+ * 
+ * When files, directories or globs are given on the command line they are
+ * handed to LexDriver and lexed in parallel instead (see LexDriver for the
+ * options).
  */
 
-import java.io.FileReader;
-import java.io.PushbackReader;
+import java.nio.file.Paths;
 
 
 /**
  * 
- * The client class creates a ToyLexer object for each input file, reads in the
- * tokens from each file, and outputs the results to System.out
+ * The client class creates a ToyLexer object, reads in the tokens from each
+ * input file with it (resetting it in between), and outputs the results to
+ * System.out
  */
 public class Client {
 
 	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			LexDriver.main(args);
+			return;
+		}
+		
 		/////////////////////////////////////////////////////
 		// TEST 1
 		////////////////////////////////////////////////////
 		
-		// open up stream for source file and pass to lexer
+		// map the source file and pass it to the lexer
 		String filename = "input1.txt";
-		PushbackReader source = new PushbackReader(new FileReader(filename), 3);
-		ToyLexer toyLexer = new ToyLexer(source);
+		ToyLexer toyLexer = new ToyLexer(Paths.get(filename));
 		
 		// scan tokens until end of file
 		while (!toyLexer.isEOF())
@@ -47,9 +55,9 @@ public class Client {
 		// TEST 2
 		////////////////////////////////////////////////////
 
+		// reuse the lexer's buffers and tables for the second file
 		filename = "input2.txt";
-		source = new PushbackReader(new FileReader(filename), 3);
-		toyLexer = new ToyLexer(source);
+		toyLexer.reset(Paths.get(filename));
 
 		// scan tokens until end of file
 		while (!toyLexer.isEOF())
@@ -0,0 +1,293 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class implements a symbol table that many lexers can intern names into
+ * at the same time. Every distinct name gets one symbol ID, numbered from 0 in
+ * the order names were first interned, so IDs can be used across all files of
+ * a project.
+ *
+ * The table is split into stripes by the first char of a name, the same way
+ * the Trie picks its switch slot. Each stripe is a hash table of immutable
+ * entry chains. Looking up a name that is already there takes no lock.
+ * Adding a new name locks only the stripe it goes into.
+ */
+public class ConcurrentSymbolTable {
+	private static final int STRIPES = 53;				// 52 letters + everything else
+	private static final int INITIAL_BUCKETS = 16;
+	private static final int CHUNK_BITS = 12;			// IDs per chunk of the name directory
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int INITIAL_CHUNKS = 16;
+	private static final int MAX_CHUNKS = 1 << 19;
+	public static final int NOT_FOUND = -1;
+
+	private final Stripe[] 							stripes;
+	private final AtomicInteger 					nextId;
+	private volatile AtomicReferenceArray<Entry[]> 	directory;	// entries by ID, grown as IDs are handed out
+
+
+	/**
+	 * Constructor
+	 */
+	public ConcurrentSymbolTable() {
+		stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+		nextId = new AtomicInteger();
+		directory = new AtomicReferenceArray<Entry[]>(INITIAL_CHUNKS);
+	}
+
+
+	/**
+	 * Returns the ID of a name, adding the name if it is not in the table yet.
+	 *
+	 * @param buf - array holding the name
+	 * @param off - index of the first char of the name
+	 * @param len - length of the name, at least 1
+	 * @return symbol ID of the name
+	 */
+	public int intern(char[] buf, int off, int len) {
+		int hash = hash(buf, off, len);
+		Stripe stripe = stripes[stripeIndex(buf[off])];
+		Entry e = stripe.find(buf, off, len, hash);
+		if (e != null)
+			return e.id;
+		return stripe.add(buf, off, len, hash);
+	}
+
+
+	/**
+	 * Returns the ID of a name, adding the name if it is not in the table yet.
+	 *
+	 * @param name - name to be interned
+	 * @return symbol ID of the name
+	 */
+	public int intern(String name) {
+		return intern(name.toCharArray(), 0, name.length());
+	}
+
+
+	/**
+	 * Looks up a name without adding it. Takes no lock.
+	 *
+	 * @param buf - array holding the name
+	 * @param off - index of the first char of the name
+	 * @param len - length of the name
+	 * @return symbol ID of the name, or NOT_FOUND
+	 */
+	public int lookup(char[] buf, int off, int len) {
+		if (len == 0)
+			return NOT_FOUND;
+		Entry e = stripes[stripeIndex(buf[off])].find(buf, off, len, hash(buf, off, len));
+		return (e == null) ? NOT_FOUND : e.id;
+	}
+
+
+	/**
+	 * Looks up a name without adding it. Takes no lock.
+	 *
+	 * @param name - name to look for
+	 * @return symbol ID of the name, or NOT_FOUND
+	 */
+	public int lookup(String name) {
+		return lookup(name.toCharArray(), 0, name.length());
+	}
+
+
+	/**
+	 * Returns the name with the given symbol ID
+	 *
+	 * @param id - symbol ID handed out by this table
+	 * @return the name
+	 */
+	public String nameOf(int id) {
+		Entry[] chunk = (id >= 0 && id < nextId.get()) ? chunkAt(id >>> CHUNK_BITS) : null;
+		Entry e = (chunk == null) ? null : chunk[id & (CHUNK_SIZE - 1)];
+		if (e == null)
+			throw new IllegalArgumentException("unknown symbol ID " + id);
+		return new String(e.name);
+	}
+
+
+	/**
+	 * @return number of distinct names in the table
+	 */
+	public int size() {
+		return nextId.get();
+	}
+
+
+	/**
+	 * Stores an entry in the directory under its ID. Called before the entry
+	 * is published in its stripe, so anyone who can see the ID can see it
+	 * here too.
+	 */
+	private void register(Entry e) {
+		int chunkIndex = e.id >>> CHUNK_BITS;
+		Entry[] chunk = chunkAt(chunkIndex);
+		if (chunk == null)
+			chunk = addChunk(chunkIndex);
+		chunk[e.id & (CHUNK_SIZE - 1)] = e;
+	}
+
+
+	/**
+	 * @return chunk of the directory, or null if it is not there yet
+	 */
+	private Entry[] chunkAt(int chunkIndex) {
+		AtomicReferenceArray<Entry[]> dir = directory;
+		return (chunkIndex < dir.length()) ? dir.get(chunkIndex) : null;
+	}
+
+
+	/**
+	 * Adds a chunk to the directory, first doubling the directory until the
+	 * chunk fits. A chunk is needed once per CHUNK_SIZE IDs, so this is done
+	 * under a lock. The larger directory is filled in before it is
+	 * published, and nothing else changes the directory, so no chunk is
+	 * lost in the copy.
+	 *
+	 * @param chunkIndex - index of the chunk
+	 * @return the chunk, new or added by another thread just before
+	 */
+	private synchronized Entry[] addChunk(int chunkIndex) {
+		if (chunkIndex >= MAX_CHUNKS)
+			throw new IllegalStateException("symbol table is full");
+		AtomicReferenceArray<Entry[]> dir = directory;
+		if (chunkIndex >= dir.length()) {
+			int length = dir.length();
+			while (length <= chunkIndex)
+				length *= 2;
+			AtomicReferenceArray<Entry[]> larger = new AtomicReferenceArray<Entry[]>(Math.min(length, MAX_CHUNKS));
+			for (int i = 0; i < dir.length(); i++)
+				larger.set(i, dir.get(i));
+			directory = dir = larger;
+		}
+		Entry[] chunk = dir.get(chunkIndex);
+		if (chunk == null) {
+			chunk = new Entry[CHUNK_SIZE];
+			dir.set(chunkIndex, chunk);
+		}
+		return chunk;
+	}
+
+
+	/**
+	 * Returns the stripe for a name, like Trie.getSwitchIndex
+	 *
+	 * @param c - first char of the name
+	 * @return stripe index
+	 */
+	private static int stripeIndex(char c) {
+		if (c >= 'A' && c <= 'Z')
+			return c - 'A';
+		else if (c >= 'a' && c <= 'z')
+			return c - 'a' + 26;
+		else
+			return STRIPES - 1;
+	}
+
+
+	private static int hash(char[] buf, int off, int len) {
+		int h = 0;
+		for (int i = 0; i < len; i++)
+			h = 31 * h + buf[off + i];
+		return h ^ (h >>> 16);
+	}
+
+
+	/**
+	 * One hash table of the striped symbol table. Readers go through the
+	 * volatile table reference and the atomic bucket array, and entries never
+	 * change once published, so find() needs no lock. add() and resizing are
+	 * done while holding the stripe's monitor.
+	 */
+	private class Stripe {
+		private volatile AtomicReferenceArray<Entry> 	buckets;
+		private int 									count;
+
+
+		Stripe() {
+			buckets = new AtomicReferenceArray<Entry>(INITIAL_BUCKETS);
+			count = 0;
+		}
+
+
+		Entry find(char[] buf, int off, int len, int hash) {
+			AtomicReferenceArray<Entry> table = buckets;
+			for (Entry e = table.get(hash & (table.length() - 1)); e != null; e = e.next) {
+				if (e.matches(buf, off, len, hash))
+					return e;
+			}
+			return null;
+		}
+
+
+		synchronized int add(char[] buf, int off, int len, int hash) {
+			// another lexer may have added the name since find() was called
+			Entry e = find(buf, off, len, hash);
+			if (e != null)
+				return e.id;
+
+			if (count + 1 > buckets.length() * 3 / 4)
+				resize();
+			AtomicReferenceArray<Entry> table = buckets;
+			int index = hash & (table.length() - 1);
+			char[] name = new char[len];
+			System.arraycopy(buf, off, name, 0, len);
+			e = new Entry(name, hash, nextId.getAndIncrement(), table.get(index));
+			register(e);
+			table.set(index, e);
+			count++;
+			return e.id;
+		}
+
+
+		/**
+		 * Doubles the number of buckets. The new table is filled with copies
+		 * of the entries before it is published, so readers see either the
+		 * old table or the complete new one.
+		 */
+		private void resize() {
+			AtomicReferenceArray<Entry> old = buckets;
+			AtomicReferenceArray<Entry> table = new AtomicReferenceArray<Entry>(old.length() * 2);
+			for (int i = 0; i < old.length(); i++) {
+				for (Entry e = old.get(i); e != null; e = e.next) {
+					int index = e.hash & (table.length() - 1);
+					table.set(index, new Entry(e.name, e.hash, e.id, table.get(index)));
+				}
+			}
+			buckets = table;
+		}
+
+	} // end of class Stripe
+
+
+	/**
+	 * Immutable entry of a bucket chain
+	 */
+	private static class Entry {
+		final char[] 	name;
+		final int 		hash;
+		final int 		id;
+		final Entry 	next;
+
+		Entry(char[] name, int hash, int id, Entry next) {
+			this.name = name;
+			this.hash = hash;
+			this.id = id;
+			this.next = next;
+		}
+
+		boolean matches(char[] buf, int off, int len, int h) {
+			if (hash != h || name.length != len)
+				return false;
+			for (int i = 0; i < len; i++) {
+				if (name[i] != buf[off + i])
+					return false;
+			}
+			return true;
+		}
+	}
+
+} // end of class ConcurrentSymbolTable
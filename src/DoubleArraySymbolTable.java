@@ -0,0 +1,283 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class implements a symbol table as a double-array trie. Each node of
+ * the trie is a slot in two parallel int arrays: the children of node s
+ * start at base[s], the child for code c is at t = base[s] + c, and
+ * check[t] == s tells that slot t really is that child. Following a char is
+ * one addition and one compare, where the linked trie follows a chain of
+ * next links.
+ *
+ * A name is walked as a string of codes. An ASCII char other than NUL is one
+ * code, its char value; any other char is two codes, one for each of its
+ * bytes, offset by 128. Code 0 ends a name, and the base of the end node
+ * holds the name's symbol ID, since an end node has no children. The root
+ * is slot 0, a node with no children yet has base 0, and a free slot has
+ * check EMPTY.
+ *
+ * When a new child's slot is taken by a child of another node, the node
+ * with fewer children has all of them moved to the first base where every
+ * one fits, and their own children are pointed at the new slots. Each child
+ * moved counts as a probe of the insert. The number of children of each
+ * node is kept in a third array, so picking the node to move is cheap.
+ * Finding the children themselves means trying every code, but only up to
+ * the highest code in the table, so a table of ASCII names never tries the
+ * byte codes. The search for a base starts at most SEARCH_WINDOW
+ * slots before where the last one was found, so free slots left far behind
+ * in the packed front of the arrays are given up rather than scanned again
+ * and again. Symbol IDs are numbered from 0 in the order names
+ * are first inserted; the names are also kept in a StringPool, under the
+ * same numbers, for dump().
+ */
+public class DoubleArraySymbolTable extends AbstractSymbolTable {
+	private static final int INITIAL_SLOTS = 1024;
+	private static final int CODES = 128 + 256;	// end, ASCII, then byte codes
+	private static final int END = 0;
+	private static final int ROOT = 0;
+	private static final int EMPTY = -1;
+	private static final int NO_CODE = -1;
+	private static final int SEARCH_WINDOW = 2 * CODES;
+
+	private int[] 		base;
+	private int[] 		check;
+	private int[] 		fanout;		// number of children of each node
+	private int 		used;		// slots in use
+	private int 		codeLimit;	// highest code in the table + 1
+	private int 		searchFrom;	// where the search for a base starts
+	private final int[] children = new int[CODES];	// codes of the node being moved
+	private final StringPool names = new StringPool();
+	private int 		moves;		// children moved by the current insert
+	private int 		walking;	// node insert() is at, kept up to date when it moves
+
+
+	/**
+	 * Constructor
+	 */
+	public DoubleArraySymbolTable() {
+		base = new int[INITIAL_SLOTS];
+		check = new int[INITIAL_SLOTS];
+		fanout = new int[INITIAL_SLOTS];
+		clear();
+	}
+
+
+	public int insert(char[] buf, int off, int len) {
+		moves = 0;
+		int s = ROOT;
+		for (int i = 0; i < len; i++) {
+			char c = buf[off + i];
+			if (c != 0 && c < 0x80) {
+				s = child(s, c);
+			} else {
+				s = child(s, 128 + (c >>> 8));
+				s = child(s, 128 + (c & 0xFF));
+			}
+		}
+		int b = base[s];
+		int t = b + END;
+		if (b == 0 || t >= check.length || check[t] != s) {
+			t = child(s, END);
+			base[t] = names.intern(buf, off, len);
+		}
+		countProbes(moves);
+		return base[t];
+	}
+
+
+	public int lookup(char[] buf, int off, int len) {
+		int s = ROOT;
+		for (int i = 0; i < len && s != EMPTY; i++) {
+			char c = buf[off + i];
+			if (c != 0 && c < 0x80) {
+				s = next(s, c);
+			} else {
+				s = next(s, 128 + (c >>> 8));
+				if (s != EMPTY)
+					s = next(s, 128 + (c & 0xFF));
+			}
+		}
+		if (s != EMPTY)
+			s = next(s, END);
+		return (s == EMPTY) ? NOT_FOUND : base[s];
+	}
+
+
+	public void clear() {
+		Arrays.fill(base, 0);
+		Arrays.fill(check, EMPTY);
+		Arrays.fill(fanout, 0);
+		check[ROOT] = ROOT;
+		used = 1;
+		codeLimit = END + 1;
+		searchFrom = 1;
+		names.clear();
+	}
+
+
+	/**
+	 * Writes out the names with their symbol IDs, one per line
+	 */
+	public void dump(Appendable out) throws IOException {
+		dumpNames(names, out);
+	}
+
+
+	/**
+	 * @return number of distinct names in the table
+	 */
+	public int size() { return names.size(); }
+
+	public double getFillRatio() { return (double) used / check.length; }
+
+
+	/**
+	 * Returns the child of a node for a code
+	 *
+	 * @param s - slot of the node
+	 * @param code - code of the child
+	 * @return slot of the child, or EMPTY if it has none
+	 */
+	private int next(int s, int code) {
+		int b = base[s];
+		int t = b + code;
+		return (b != 0 && t < check.length && check[t] == s) ? t : EMPTY;
+	}
+
+
+	/**
+	 * Returns the child of a node for a code, adding the child if the node
+	 * does not have it yet
+	 *
+	 * @param s - slot of the node
+	 * @param code - code of the child
+	 * @return slot of the child
+	 */
+	private int child(int s, int code) {
+		if (code >= codeLimit)
+			codeLimit = code + 1;
+		int b = base[s];
+		if (b == 0) {
+			children[0] = code;
+			b = findBase(1);
+			base[s] = b;
+		} else {
+			int t = b + code;
+			if (t < check.length && check[t] == s)
+				return t;
+			if (!isFree(t)) {
+				int owner = check[t];
+				if (fanout[owner] <= fanout[s]) {
+					walking = s;
+					relocate(owner, NO_CODE);	// may move s itself
+					s = walking;
+				} else {
+					b = relocate(s, code);
+				}
+			}
+		}
+		int t = b + code;
+		claim(t, s);
+		fanout[s]++;
+		return t;
+	}
+
+
+	/**
+	 * Moves the children of a node to a base where they, and a new child if
+	 * there is one, all fit
+	 *
+	 * @param s - slot of the node
+	 * @param code - code of the child to be added, or NO_CODE
+	 * @return new base of the node
+	 */
+	private int relocate(int s, int code) {
+		int oldBase = base[s];
+		int n = 0;
+		for (int k = 0; k < codeLimit && oldBase + k < check.length; k++) {
+			if (check[oldBase + k] == s)
+				children[n++] = k;
+		}
+		if (code != NO_CODE)
+			children[n] = code;
+		int newBase = findBase((code != NO_CODE) ? n + 1 : n);
+
+		for (int i = 0; i < n; i++) {
+			int k = children[i];
+			int from = oldBase + k;
+			int to = newBase + k;
+			claim(to, s);
+			int b = base[from];
+			base[to] = b;
+			fanout[to] = fanout[from];
+			fanout[from] = 0;
+			if (k != END && b != 0) {	// an end node's base is a symbol ID
+				for (int g = 0; g < codeLimit && b + g < check.length; g++) {
+					if (check[b + g] == from)
+						check[b + g] = to;
+				}
+			}
+			base[from] = 0;
+			check[from] = EMPTY;
+			used--;
+			moves++;
+			if (from == walking)
+				walking = to;
+		}
+		base[s] = newBase;
+		return newBase;
+	}
+
+
+	/**
+	 * Finds the first base from searchFrom on at which every code in
+	 * children[0..n) lands on a free slot
+	 *
+	 * @param n - number of codes in children
+	 * @return base for the codes
+	 */
+	private int findBase(int n) {
+		int first = children[0];
+		for (int p = Math.max(searchFrom, first + 1); ; p++) {
+			if (!isFree(p))
+				continue;
+			int b = p - first;
+			int i = 1;
+			while (i < n && isFree(b + children[i]))
+				i++;
+			if (i == n) {
+				if (p - searchFrom > SEARCH_WINDOW)
+					searchFrom = p - SEARCH_WINDOW;
+				return b;
+			}
+		}
+	}
+
+
+	/**
+	 * Makes a free slot a child of a node
+	 */
+	private void claim(int t, int parent) {
+		if (t >= check.length) {
+			int oldLength = check.length;
+			int newLength = Math.max(t + CODES, oldLength * 2);
+			base = Arrays.copyOf(base, newLength);
+			check = Arrays.copyOf(check, newLength);
+			fanout = Arrays.copyOf(fanout, newLength);
+			Arrays.fill(check, oldLength, newLength, EMPTY);
+		}
+		check[t] = parent;
+		base[t] = 0;
+		used++;
+		if (t == searchFrom) {
+			while (searchFrom < check.length && check[searchFrom] != EMPTY)
+				searchFrom++;
+		}
+	}
+
+
+	private boolean isFree(int t) {
+		return t >= check.length || check[t] == EMPTY;
+	}
+
+} // end of class DoubleArraySymbolTable
@@ -0,0 +1,45 @@
+import java.io.IOException;
+
+/**
+ * This class implements a symbol table as an open addressing hash table.
+ * The names are kept in a StringPool, whose pool indexes are the symbol IDs,
+ * so IDs are numbered from 0 in the order names are first inserted. A probe
+ * is a step past the slot a name hashes to.
+ */
+public class HashSymbolTable extends AbstractSymbolTable {
+	private final StringPool names = new StringPool();
+
+
+	public int insert(char[] buf, int off, int len) {
+		int id = names.intern(buf, off, len);
+		countProbes(names.lastProbes());
+		return id;
+	}
+
+
+	public int lookup(char[] buf, int off, int len) {
+		return names.lookup(buf, off, len);
+	}
+
+
+	public void clear() {
+		names.clear();
+	}
+
+
+	/**
+	 * Writes out the names with their symbol IDs, one per line
+	 */
+	public void dump(Appendable out) throws IOException {
+		dumpNames(names, out);
+	}
+
+
+	/**
+	 * @return number of distinct names in the table
+	 */
+	public int size() { return names.size(); }
+
+	public double getFillRatio() { return (double) names.size() / names.slotCount(); }
+
+} // end of class HashSymbolTable
@@ -0,0 +1,339 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * This class implements an on-disk cache of lexed files. Entries are token
+ * files (see TokenFileWriter) named after the SHA-256 hash of the source
+ * file's contents, so a file that has not changed since it was last lexed is
+ * only hashed and its tokens are read back from the cache.
+ *
+ * A file that is not in the cache is lexed with a lexer from the caller's
+ * LexerFactory, so misses get the caller's pooling, limits, metrics and
+ * kind of symbol table. The settings that change what a lexer outputs are
+ * hashed into the entry name along with the contents, so a hit is always
+ * what those settings would have lexed.
+ *
+ * Token values in an entry are the file's own symbol IDs and the entry's
+ * symbol section lists its identifiers, so a caller that shares a symbol
+ * table across files interns the names from there on a hit and on a miss
+ * alike.
+ *
+ * Several threads and several processes can use the same cache directory.
+ * Entries are written to a temporary file and renamed into place, so a
+ * reader never sees a partly written entry. Each hit touches the entry's
+ * modification time, and once the cache grows past its size limit the least
+ * recently used entries are deleted, holding a lock file so only one process
+ * evicts at a time.
+ */
+public class LexCache {
+	private static final int FORMAT = 6;		// bump when the lexer's output changes
+	private static final String SUFFIX = ".tok";
+	private static final String LOCK_FILE = "cache.lock";
+	private static final double EVICT_TO = 0.9;	// fraction of the limit left after evicting
+	private static final Object evictLock = new Object();	// file locks don't exclude threads
+	private static final LexerFactory DEFAULT_LEXERS = new LexerFactory() {
+		public ToyLexer acquire(Path file) throws IOException { return new ToyLexer(file); }
+		public void release(ToyLexer lexer) {}
+		public String settings() { return ""; }
+	};
+
+	private final Path 			dir;
+	private final long 			maxBytes;
+	private final AtomicLong 	bytes;		// estimate, rechecked when evicting
+	private final AtomicLong 	hits = new AtomicLong();
+	private final AtomicLong 	misses = new AtomicLong();
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param dir - cache directory, created if needed
+	 * @param maxBytes - size the cache is kept under
+	 * @throws IOException
+	 */
+	public LexCache(Path dir, long maxBytes) throws IOException {
+		if (maxBytes <= 0)
+			throw new IllegalArgumentException("cache size must be positive");
+		this.dir = Files.createDirectories(dir);
+		this.maxBytes = maxBytes;
+		this.bytes = new AtomicLong(entrySizes());
+	}
+
+
+	/**
+	 * Returns the tokens of a source file as a lexer with default settings
+	 * outputs them (see lex(Path, LexerFactory))
+	 *
+	 * @param source - Toy source file
+	 * @return reader over the cached token file
+	 * @throws IOException
+	 */
+	public TokenFileReader lex(Path source) throws IOException {
+		return lex(source, DEFAULT_LEXERS);
+	}
+
+
+	/**
+	 * Returns the tokens of a source file, from the cache if the file's
+	 * contents are there under the factory's settings and by lexing it (and
+	 * storing the result) if not.
+	 *
+	 * @param source - Toy source file
+	 * @param lexers - where the lexer for a miss comes from
+	 * @return reader over the cached token file
+	 * @throws IOException
+	 */
+	public TokenFileReader lex(Path source, LexerFactory lexers) throws IOException {
+		Path entry = dir.resolve(hash(source, lexers.settings()) + SUFFIX);
+		try {
+			TokenFileReader tokens = new TokenFileReader(entry);
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+			hits.incrementAndGet();
+			return tokens;
+		} catch (NoSuchFileException e) {
+			// not cached yet, or evicted just now
+		} catch (IOException e) {
+			Files.deleteIfExists(entry);	// damaged, lex the file again
+		}
+
+		misses.incrementAndGet();
+
+		// the entry is mapped before it is renamed into place, so it can be
+		// returned even if another process evicts it right away
+		Path tmp = Files.createTempFile(dir, "entry", ".part");
+		try {
+			lexTo(source, lexers, tmp);
+			TokenFileReader tokens = new TokenFileReader(tmp);
+			long size = Files.size(tmp);
+			Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			if (bytes.addAndGet(size) > maxBytes)
+				evict();
+			return tokens;
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+
+	/**
+	 * Lexes a file with a lexer from the factory and writes its tokens to a
+	 * token file. The lexer goes back to the factory only if it got through;
+	 * one that failed part way may be in any state, so it is closed instead,
+	 * which also closes the file it had open.
+	 *
+	 * @param source - Toy source file
+	 * @param lexers - where the lexer comes from
+	 * @param file - token file to be written
+	 * @throws IOException
+	 */
+	private static void lexTo(Path source, LexerFactory lexers, Path file) throws IOException {
+		ToyLexer lexer = lexers.acquire(source);
+		boolean done = false;
+		try {
+			while (!lexer.isEOF())
+				lexer.scanNextToken();
+			TokenFileWriter.write(lexer, file, false);
+			done = true;
+		} finally {
+			if (done)
+				lexers.release(lexer);
+			else
+				lexer.close();
+		}
+	}
+
+
+	/**
+	 * @return number of lookups answered from the cache
+	 */
+	public long getHits() { return hits.get(); }
+
+
+	/**
+	 * @return number of lookups that had to lex the file
+	 */
+	public long getMisses() { return misses.get(); }
+
+
+	/**
+	 * Deletes the least recently used entries until the cache is back under
+	 * its limit. Entries another process deletes at the same time are
+	 * skipped.
+	 *
+	 * @throws IOException
+	 */
+	private void evict() throws IOException {
+		synchronized (evictLock) {
+			try (FileChannel lockChannel = FileChannel.open(dir.resolve(LOCK_FILE),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				FileLock lock = lockChannel.lock();
+				try {
+					evictLocked();
+				} finally {
+					lock.release();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Does the work of evict() while holding its locks
+	 */
+	private void evictLocked() throws IOException {
+		List<Entry> entries = listEntries();
+		long total = 0;
+		for (Entry e : entries)
+			total += e.size;
+		entries.sort(Comparator.comparingLong(e -> e.lastUsed));
+
+		long target = (long) (maxBytes * EVICT_TO);
+		for (int i = 0; i < entries.size() && total > target; i++) {
+			Entry e = entries.get(i);
+			try {
+				Files.deleteIfExists(e.file);
+			} catch (IOException ex) {
+				continue;	// still mapped somewhere on a system that forbids deleting it
+			}
+			total -= e.size;
+		}
+		bytes.set(total);
+	}
+
+
+	/**
+	 * @return total size of the entries in the cache directory
+	 */
+	private long entrySizes() throws IOException {
+		long total = 0;
+		for (Entry e : listEntries())
+			total += e.size;
+		return total;
+	}
+
+
+	private List<Entry> listEntries() throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		try (Stream<Path> files = Files.list(dir)) {
+			files.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).forEach(p -> {
+				try {
+					entries.add(new Entry(p, Files.size(p), Files.getLastModifiedTime(p).toMillis()));
+				} catch (NoSuchFileException e) {
+					// deleted by another process while listing
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return entries;
+	}
+
+
+	/**
+	 * Hashes the contents of a file together with the cache format and the
+	 * lexer settings
+	 *
+	 * @param file - file to be hashed
+	 * @param settings - lexer settings, see LexerFactory.settings()
+	 * @return SHA-256 hash as hex digits
+	 * @throws IOException
+	 */
+	private static String hash(Path file, String settings) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);	// every Java platform has SHA-256
+		}
+		digest.update((byte) FORMAT);
+		digest.update((byte) TokenFileWriter.VERSION);
+		byte[] settingBytes = settings.getBytes(StandardCharsets.UTF_8);
+		digest.update(settingBytes);
+		digest.update((byte) 0);	// so settings and contents can't run into each other
+
+		ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			while (channel.read(buf) >= 0) {
+				buf.flip();
+				digest.update(buf);
+				buf.clear();
+			}
+		}
+
+		StringBuilder hex = new StringBuilder(64);
+		for (byte b : digest.digest())
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+	}
+
+
+	/**
+	 * Supplies the lexers files missing from the cache are lexed with
+	 */
+	public interface LexerFactory {
+		/**
+		 * Returns a lexer set up to scan a file. Its token values have to be
+		 * the file's own symbol IDs, so it must not intern into a shared
+		 * symbol table.
+		 *
+		 * @param file - file to be lexed
+		 * @return lexer that has not scanned anything yet
+		 * @throws IOException if the file can't be opened
+		 */
+		ToyLexer acquire(Path file) throws IOException;
+
+
+		/**
+		 * Takes back a lexer once its tokens are stored
+		 *
+		 * @param lexer - lexer from acquire()
+		 */
+		void release(ToyLexer lexer);
+
+
+		/**
+		 * Names every setting of the lexers that changes their tokens or
+		 * symbol IDs (token length limit, scanner, kind of symbol table).
+		 * Entries lexed under other settings are never returned.
+		 *
+		 * @return settings as a string, the same for the same settings
+		 */
+		String settings();
+	}
+
+
+	/**
+	 * A cache entry found in the directory
+	 */
+	private static class Entry {
+		final Path 	file;
+		final long 	size;
+		final long 	lastUsed;
+
+		Entry(Path file, long size, long lastUsed) {
+			this.file = file;
+			this.size = size;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+} // end of class LexCache
@@ -0,0 +1,524 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * This class lexes many Toy source files in parallel on a work-stealing
+ * fork-join pool. Inputs are given as files, directories (searched for files
+ * matching the include pattern) or glob patterns. Each worker thread reuses
+ * its lexers from a LexerPool, so small files cost little more than the
+ * lexing itself. At most maxInFlight files are being lexed or waiting to be
+ * reported at any time. With ordered output
+ * the per-file results are printed in input order, otherwise as they finish.
+ * With -shared all lexers intern their identifiers into one concurrent symbol
+ * table, so identifier IDs are the same across files. With -cache the tokens
+ * of each file are kept in an on-disk cache (see LexCache), and files whose
+ * contents are already cached under the same settings are not lexed again.
+ * With -metrics the lexers count what they do into a LexMetrics (see
+ * there), which is registered with JMX while the files are lexed and
+ * printed with the totals. With
+ * -maxtoken the lexers stop at the first token longer than n chars (see
+ * ToyLexer.setMaxTokenLength). With -symbols every lexer starts from the
+ * symbol table image in the given file, if there is one, and the names of
+ * all files are saved back to it at the end, so the next run starts from
+ * this run's symbols and their IDs. With -symtab the lexers enter their
+ * identifiers into the given kind of symbol table (trie, hash or darray,
+ * see SymbolTable) instead of a trie; -symbols needs a trie.
+ *
+ * Usage: java LexDriver [-threads n] [-inflight n] [-ordered] [-shared]
+ *                       [-cache dir] [-cachesize MB] [-metrics]
+ *                       [-maxtoken n] [-symbols file] [-symtab kind]
+ *                       [-include glob] file|dir|glob ...
+ */
+public class LexDriver {
+	private static final String DEFAULT_INCLUDE = "*.txt";
+	private static final long DEFAULT_CACHE_MB = 256;
+
+	private final int 			threads;
+	private final int 			maxInFlight;
+	private final boolean 		ordered;
+	private final PrintStream 	out;
+	private ConcurrentSymbolTable sharedSymbols;	// null unless -shared
+	private LexCache 			cache;		// null unless -cache
+	private LexMetrics 			metrics;	// null unless -metrics
+	private int 				maxTokenLength;	// 0 unless -maxtoken
+	private Path 				symbolFile;		// null unless -symbols
+	private ToyLexer.Trie 		symbolImage;	// image lexers start from, null for keywords only
+	private ToyLexer.Trie 		projectSymbols;	// names of all files, saved to symbolFile
+	private String 				symbolTableKind;	// null unless -symtab
+
+	private FileResult[] 		results;	// finished files waiting to be printed
+	private int 				nextToPrint;
+	private Semaphore 			inFlight;
+	private final LexerPool 	lexers = new LexerPool();
+	private final AtomicLong 	totalBytes = new AtomicLong();
+	private final AtomicLong 	totalTokens = new AtomicLong();
+	private final AtomicLong 	failedFiles = new AtomicLong();
+	private final LexCache.LexerFactory cacheLexers = new LexCache.LexerFactory() {
+		public ToyLexer acquire(Path file) throws IOException {
+			ToyLexer lexer = acquireLexer(file);
+			lexer.setSharedSymbols(null);	// entries hold the file's own IDs
+			return lexer;
+		}
+		public void release(ToyLexer lexer) {
+			lexers.release(lexer);
+		}
+		public String settings() {
+			// the driver always scans with the DFA
+			return "maxtoken " + maxTokenLength + ", table-driven, symtab "
+					+ (symbolTableKind != null ? symbolTableKind : "trie");
+		}
+	};
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param threads - number of worker threads
+	 * @param maxInFlight - max number of files lexed or buffered at once
+	 * @param ordered - true to print results in input order
+	 * @param out - stream the results are printed to
+	 */
+	public LexDriver(int threads, int maxInFlight, boolean ordered, PrintStream out) {
+		if (threads < 1 || maxInFlight < 1)
+			throw new IllegalArgumentException("threads and in-flight limit must be at least 1");
+		this.threads = threads;
+		this.maxInFlight = maxInFlight;
+		this.ordered = ordered;
+		this.out = out;
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int maxInFlight = -1;
+		boolean ordered = false;
+		boolean shared = false;
+		boolean withMetrics = false;
+		int maxTokenLength = 0;
+		String include = DEFAULT_INCLUDE;
+		String cacheDir = null;
+		String symbolFile = null;
+		String symbolTableKind = null;
+		long cacheMegabytes = DEFAULT_CACHE_MB;
+		List<String> specs = new ArrayList<String>();
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-threads":	threads = Integer.parseInt(args[++i]); 		break;
+			case "-inflight":	maxInFlight = Integer.parseInt(args[++i]); 	break;
+			case "-ordered":	ordered = true; 							break;
+			case "-shared":		shared = true; 								break;
+			case "-include":	include = args[++i]; 						break;
+			case "-cache":		cacheDir = args[++i]; 						break;
+			case "-cachesize":	cacheMegabytes = Long.parseLong(args[++i]); break;
+			case "-metrics":	withMetrics = true; 						break;
+			case "-maxtoken":	maxTokenLength = Integer.parseInt(args[++i]); break;
+			case "-symbols":	symbolFile = args[++i]; 					break;
+			case "-symtab":		symbolTableKind = args[++i]; 				break;
+			default:			specs.add(args[i]);
+			}
+		}
+		if (specs.isEmpty()) {
+			System.err.println("usage: java LexDriver [-threads n] [-inflight n] [-ordered] "
+					+ "[-shared] [-cache dir] [-cachesize MB] [-metrics] [-maxtoken n] "
+					+ "[-symbols file] [-symtab trie|hash|darray] [-include glob] file|dir|glob ...");
+			System.exit(2);
+		}
+		if (symbolFile != null && symbolTableKind != null && !symbolTableKind.equals("trie")) {
+			System.err.println("-symbols needs a trie symbol table");
+			System.exit(2);
+		}
+		if (maxInFlight < 1)
+			maxInFlight = threads * 4;
+
+		List<Path> files = collectFiles(specs, include);
+		LexDriver driver = new LexDriver(threads, maxInFlight, ordered, System.out);
+		if (shared)
+			driver.setSharedSymbols(new ConcurrentSymbolTable());
+		if (cacheDir != null)
+			driver.setCache(new LexCache(Paths.get(cacheDir), cacheMegabytes * 1024 * 1024));
+		if (withMetrics) {
+			LexMetrics metrics = new LexMetrics();
+			metrics.register("LexDriver");
+			driver.setMetrics(metrics);
+		}
+		driver.setMaxTokenLength(maxTokenLength);
+		if (symbolFile != null)
+			driver.setSymbolFile(Paths.get(symbolFile));
+		driver.setSymbolTableKind(symbolTableKind);
+		driver.run(files);
+	}
+
+
+	/**
+	 * Sets a symbol table that all lexers of this driver intern into
+	 *
+	 * @param table - shared symbol table, or null for one table per file
+	 */
+	public void setSharedSymbols(ConcurrentSymbolTable table) {
+		sharedSymbols = table;
+	}
+
+
+	/**
+	 * Sets a cache the tokens of each file are looked up in and stored in
+	 *
+	 * @param cache - lex cache, or null to always lex
+	 */
+	public void setCache(LexCache cache) {
+		this.cache = cache;
+	}
+
+
+	/**
+	 * Sets metrics that all lexers of this driver count into, including the
+	 * ones lexing cache misses. Files found in the cache are not lexed, so
+	 * they are not counted.
+	 *
+	 * @param metrics - metrics to report to, or null for none
+	 */
+	public void setMetrics(LexMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+
+	/**
+	 * Sets the longest token the lexers of this driver allow. The limit is
+	 * part of the cache key, so files found in the cache were lexed with it
+	 * too.
+	 *
+	 * @param maxTokenLength - longest token allowed, or 0 for no limit
+	 */
+	public void setMaxTokenLength(int maxTokenLength) {
+		this.maxTokenLength = maxTokenLength;
+	}
+
+
+	/**
+	 * Sets a symbol table image file. Lexers start from the image in the
+	 * file if it exists, and run() saves the names of all files lexed to it.
+	 *
+	 * @param file - symbol table image file, or null for none
+	 * @throws IOException if the file exists but is not a valid image
+	 */
+	public void setSymbolFile(Path file) throws IOException {
+		symbolFile = file;
+		symbolImage = null;
+		projectSymbols = null;
+		if (file == null)
+			return;
+		if (Files.exists(file))
+			symbolImage = ToyLexer.Trie.load(file);
+		projectSymbols = (symbolImage != null) ? new ToyLexer.Trie(symbolImage, 0) : ToyLexer.newSymbolTable();
+	}
+
+
+	/**
+	 * Sets the kind of symbol table the lexers enter their identifiers into.
+	 * The kind is part of the cache key, since it decides the symbol IDs
+	 * stored in an entry, so files found in the cache were lexed with it
+	 * too.
+	 *
+	 * @param kind - "trie", "hash" or "darray" (see SymbolTable.create), or
+	 * null for the lexers' own trie
+	 */
+	public void setSymbolTableKind(String kind) {
+		if (kind != null)
+			SymbolTable.create(kind);	// rejects unknown kinds now rather than per file
+		// the lexers' own table is already a trie
+		symbolTableKind = "trie".equals(kind) ? null : kind;
+	}
+
+
+	/**
+	 * Expands the command line inputs into a sorted list of files.
+	 *
+	 * @param specs - files, directories or glob patterns
+	 * @param include - glob for file names to pick up inside directories
+	 * @return files to be lexed
+	 * @throws IOException
+	 */
+	public static List<Path> collectFiles(List<String> specs, String include) throws IOException {
+		PathMatcher includeMatcher = FileSystems.getDefault().getPathMatcher("glob:" + include);
+		TreeSet<Path> files = new TreeSet<Path>();
+
+		for (String spec : specs) {
+			Path path = Paths.get(spec);
+			if (isGlob(spec)) {
+				PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + spec);
+				try (Stream<Path> walk = Files.walk(globBase(spec))) {
+					walk.filter(p -> Files.isRegularFile(p) && matcher.matches(p))
+						.forEach(files::add);
+				}
+			} else if (Files.isDirectory(path)) {
+				try (Stream<Path> walk = Files.walk(path)) {
+					walk.filter(p -> Files.isRegularFile(p) && includeMatcher.matches(p.getFileName()))
+						.forEach(files::add);
+				}
+			} else {
+				files.add(path);
+			}
+		}
+		return new ArrayList<Path>(files);
+	}
+
+
+	/**
+	 * Lexes all files and prints one line per file followed by the totals.
+	 *
+	 * @param files - files to be lexed
+	 * @throws InterruptedException
+	 * @throws IOException if the symbol table image can't be saved
+	 */
+	public void run(List<Path> files) throws InterruptedException, IOException {
+		results = new FileResult[files.size()];
+		nextToPrint = 0;
+		inFlight = new Semaphore(maxInFlight);
+		CountDownLatch done = new CountDownLatch(files.size());
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long startTime = System.nanoTime();
+
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				inFlight.acquire();
+				final int index = i;
+				final Path file = files.get(i);
+				pool.execute(() -> {
+					FileResult result = null;
+					try {
+						result = lexFile(file);
+					} catch (Throwable e) {
+						// an Error still fills the file's slot, so the permit
+						// comes back and ordered output goes on
+						result = new FileResult(file, 0, 0, 0, e);
+						throw e;
+					} finally {
+						try {
+							report(index, result);
+						} finally {
+							done.countDown();
+						}
+					}
+				});
+			}
+			done.await();
+		} finally {
+			pool.shutdown();
+		}
+
+		double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+		double megabytes = totalBytes.get() / (1024.0 * 1024.0);
+		out.printf("%d files (%d failed), %.2f MB, %d tokens in %.3f s: %.2f MB/s, %.0f tokens/s%n",
+				files.size(), failedFiles.get(), megabytes, totalTokens.get(), seconds,
+				megabytes / seconds, totalTokens.get() / seconds);
+		if (sharedSymbols != null)
+			out.printf("%d distinct identifiers%n", sharedSymbols.size());
+		if (cache != null)
+			out.printf("cache: %d hits, %d misses%n", cache.getHits(), cache.getMisses());
+		if (metrics != null)
+			out.println("metrics: " + metrics.snapshot());
+		if (projectSymbols != null) {
+			projectSymbols.save(symbolFile);
+			out.printf("symbol table saved to %s%n", symbolFile);
+		}
+	}
+
+
+	/**
+	 * Lexes one file to the end.
+	 *
+	 * @param file - file to be lexed
+	 * @return token and byte counts for the file, or the error it failed with
+	 */
+	private FileResult lexFile(Path file) {
+		long start = System.nanoTime();
+		try {
+			if (cache != null)
+				return lexCached(file, start);
+			
+			ToyLexer lexer = acquireLexer(file);
+			int tokenCount;
+			boolean done = false;
+			try {
+				lexer.setSharedSymbols(sharedSymbols);
+				if (symbolImage != null)
+					lexer.setSymbolImage(symbolImage);
+				while (!lexer.isEOF())
+					lexer.scanNextToken();
+				if (projectSymbols != null) {
+					synchronized (projectSymbols) {
+						lexer.addIdentifiersTo(projectSymbols);
+					}
+				}
+				tokenCount = lexer.getTokens().size();
+				done = true;
+			} finally {
+				// a lexer that failed part way may be in any state, so it
+				// is closed (and its file with it) rather than pooled
+				if (done)
+					lexers.release(lexer);
+				else
+					lexer.close();
+			}
+
+			return new FileResult(file, tokenCount, Files.size(file), System.nanoTime() - start, null);
+		} catch (IOException | RuntimeException e) {
+			return new FileResult(file, 0, 0, System.nanoTime() - start, e);
+		}
+	}
+
+
+	/**
+	 * Returns a lexer for a file from the pool, set up with this driver's
+	 * symbol table kind, metrics and token length limit
+	 *
+	 * @param file - file to be lexed
+	 * @return lexer ready to scan the file
+	 * @throws IOException
+	 */
+	private ToyLexer acquireLexer(Path file) throws IOException {
+		ToyLexer lexer = lexers.acquire(file);
+		// a pooled lexer keeps its table, so only new lexers need one
+		if (symbolTableKind != null && lexer.getSymbolTable() instanceof ToyLexer.Trie)
+			lexer.setSymbolTable(SymbolTable.create(symbolTableKind));
+		lexer.setMetrics(metrics);
+		lexer.setMaxTokenLength(maxTokenLength);
+		return lexer;
+	}
+
+
+	/**
+	 * Gets the tokens of one file through the cache, lexing it with a
+	 * pooled lexer on a miss. The file's identifiers are interned into the
+	 * shared symbol table and the project symbols from the cached symbol
+	 * section.
+	 *
+	 * @param file - file to be lexed
+	 * @param start - System.nanoTime() when the file was started
+	 * @return token and byte counts for the file
+	 * @throws IOException
+	 */
+	private FileResult lexCached(Path file, long start) throws IOException {
+		TokenFileReader tokens = cache.lex(file, cacheLexers);
+		if (sharedSymbols != null) {
+			for (int s = 0; s < tokens.symbolCount(); s++)
+				sharedSymbols.intern(tokens.symbolName(s));
+		}
+		if (projectSymbols != null) {
+			synchronized (projectSymbols) {
+				for (int s = 0; s < tokens.symbolCount(); s++)
+					projectSymbols.insert(tokens.symbolName(s));
+			}
+		}
+
+		return new FileResult(file, tokens.size(), Files.size(file), System.nanoTime() - start, null);
+	}
+
+
+	/**
+	 * Hands a finished file over for printing. In ordered mode results are
+	 * held until all earlier files are printed. The in-flight permit of a
+	 * file is given back when its line is printed, before printing it, so a
+	 * failing print can't hold on to it.
+	 *
+	 * @param index - position of the file in the input list
+	 * @param result - result of lexing the file
+	 */
+	private synchronized void report(int index, FileResult result) {
+		if (result.error == null) {
+			totalBytes.addAndGet(result.bytes);
+			totalTokens.addAndGet(result.tokens);
+		} else {
+			failedFiles.incrementAndGet();
+		}
+
+		if (!ordered) {
+			inFlight.release();
+			print(result);
+			return;
+		}
+		results[index] = result;
+		while (nextToPrint < results.length && results[nextToPrint] != null) {
+			FileResult next = results[nextToPrint];
+			results[nextToPrint++] = null;
+			inFlight.release();
+			print(next);
+		}
+	}
+
+
+	/**
+	 * Prints the result line for one file
+	 */
+	private void print(FileResult r) {
+		if (r.error != null)
+			out.printf("%s: FAILED (%s)%n", r.file, r.error);
+		else
+			out.printf("%s: %d tokens, %d bytes, %.3f ms%n", r.file, r.tokens, r.bytes, r.nanos / 1e6);
+	}
+
+
+	/**
+	 * Checks if a command line input is a glob pattern
+	 */
+	private static boolean isGlob(String spec) {
+		for (char c : spec.toCharArray()) {
+			if (c == '*' || c == '?' || c == '[' || c == '{')
+				return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns the directory a glob pattern is searched from, which is the
+	 * part of the pattern before the path element holding the first glob
+	 * char. Patterns without a directory part are searched from the current
+	 * directory.
+	 */
+	private static Path globBase(String spec) {
+		int firstGlob = 0;
+		while (firstGlob < spec.length() && "*?[{".indexOf(spec.charAt(firstGlob)) < 0)
+			firstGlob++;
+		int separator = spec.lastIndexOf('/', firstGlob);
+		if (separator < 0)
+			return Paths.get("");
+		if (separator == 0)
+			return Paths.get("/");
+		return Paths.get(spec.substring(0, separator));
+	}
+
+
+	/**
+	 * Outcome of lexing a single file
+	 */
+	private static class FileResult {
+		final Path 		file;
+		final long 		tokens;
+		final long 		bytes;
+		final long 		nanos;
+		final Throwable error;
+
+		FileResult(Path file, long tokens, long bytes, long nanos, Throwable error) {
+			this.file = file;
+			this.tokens = tokens;
+			this.bytes = bytes;
+			this.nanos = nanos;
+			this.error = error;
+		}
+	}
+
+} // end of class LexDriver
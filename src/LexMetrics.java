@@ -0,0 +1,336 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This class collects counters from lexers that have been handed it with
+ * ToyLexer.setMetrics: input chars consumed, tokens by kind, comments
+ * skipped and the time spent skipping them, chars pushed back, and how many
+ * probes the symbol table's inserts make and how full the table is (see
+ * SymbolTable for what a probe is in each kind of table).
+ *
+ * A lexer counts into a Recorder of its own with plain field increments and
+ * only adds its counts to the shared totals every RECORD_INTERVAL tokens and
+ * at the end of its input, so many lexers can report to one LexMetrics
+ * without contending on it. The totals can be read with snapshot(), through
+ * JMX once register() has been called, and from a JFR recording, where each
+ * batch a lexer reports is a "Toy Lexer Batch" event.
+ */
+public class LexMetrics implements LexMetricsMXBean {
+	static final int RECORD_INTERVAL = 1 << 16;	// tokens between reports
+	private static final int KINDS = ToyLexer.ToyToken.values().length + 1;
+
+	private final long[] 	tokens = new long[KINDS];	// indexed by token number
+	private long 			chars;
+	private long 			comments;
+	private long 			commentNanos;
+	private long 			pushbacks;
+	private long 			trieInserts;
+	private long 			trieProbes;
+	private int 			maxProbeChain;
+	private double 			trieFillRatio;
+	private ObjectName 		registeredName;
+
+
+	/**
+	 * Returns a copy of the counters as they are now
+	 *
+	 * @return snapshot of the counters
+	 */
+	public synchronized Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+
+	/**
+	 * Registers these metrics with the platform MBean server
+	 *
+	 * @param name - name that tells these metrics apart from others
+	 * @return name the MBean was registered under
+	 * @throws JMException if the name is taken or not valid
+	 */
+	public synchronized ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("cs411.toylexer:type=LexMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		registeredName = objectName;
+		return objectName;
+	}
+
+
+	/**
+	 * Removes the MBean registered by register(), if any
+	 *
+	 * @throws JMException
+	 */
+	public synchronized void unregister() throws JMException {
+		if (registeredName != null)
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+		registeredName = null;
+	}
+
+
+	public synchronized long getCharsConsumed() { return chars; }
+	public synchronized long getCommentsSkipped() { return comments; }
+	public synchronized long getCommentSkipNanos() { return commentNanos; }
+	public synchronized long getPushbacks() { return pushbacks; }
+	public synchronized long getTrieInserts() { return trieInserts; }
+	public synchronized int getMaxProbeChain() { return maxProbeChain; }
+	public synchronized double getTrieFillRatio() { return trieFillRatio; }
+
+
+	public synchronized long getTokenCount() {
+		long total = 0;
+		for (long n : tokens)
+			total += n;
+		return total;
+	}
+
+
+	public Map<String, Long> getTokensByKind() {
+		return snapshot().getTokensByKind();
+	}
+
+
+	public synchronized double getMeanProbeChain() {
+		return (trieInserts == 0) ? 0 : (double) trieProbes / trieInserts;
+	}
+
+
+	public synchronized void reset() {
+		Arrays.fill(tokens, 0);
+		chars = comments = commentNanos = pushbacks = trieInserts = trieProbes = 0;
+		maxProbeChain = 0;
+		trieFillRatio = 0;
+	}
+
+
+	/**
+	 * Adds the counts of a recorder to the totals
+	 */
+	private synchronized void add(Recorder r, double fillRatio) {
+		for (int k = 0; k < KINDS; k++)
+			tokens[k] += r.tokens[k];
+		chars += r.chars;
+		comments += r.comments;
+		commentNanos += r.commentNanos;
+		pushbacks += r.pushbacks;
+		trieInserts += r.trieInserts;
+		trieProbes += r.trieProbes;
+		maxProbeChain = Math.max(maxProbeChain, r.maxProbeChain);
+		trieFillRatio = fillRatio;
+	}
+
+
+	/**
+	 * Counters of one lexer since it last reported. ToyLexer increments the
+	 * fields directly; the symbol table counters are read from the lexer's
+	 * SymbolTable when it reports.
+	 */
+	static final class Recorder {
+		final LexMetrics 	metrics;
+		final long[] 		tokens = new long[KINDS];
+		long 				chars;
+		long 				comments;
+		long 				commentNanos;
+		long 				pushbacks;
+		long 				trieInserts;
+		long 				trieProbes;
+		int 				maxProbeChain;
+		int 				pending;		// tokens since the last report
+		long 				offset;			// source offset chars are counted up to
+		private SymbolTable tableSeen;			// table the totals below are from
+		private long 		trieInsertsSeen;	// symbol table totals at the last report
+		private long 		trieProbesSeen;
+		private BatchEvent 	event;
+
+
+		Recorder(LexMetrics metrics) {
+			this.metrics = metrics;
+			startEvent();
+		}
+
+
+		/**
+		 * Adds the counts since the last report to the totals and starts
+		 * counting again from zero
+		 *
+		 * @param offset - source offset the lexer has consumed input up to
+		 * @param table - the lexer's symbol table
+		 */
+		void report(long offset, SymbolTable table) {
+			chars += Math.max(0, offset - this.offset);
+			this.offset = offset;
+			if (table != tableSeen) {	// the lexer switched tables
+				tableSeen = table;
+				trieInsertsSeen = trieProbesSeen = 0;
+			}
+			trieInserts = table.getInserts() - trieInsertsSeen;
+			trieProbes = table.getProbes() - trieProbesSeen;
+			trieInsertsSeen = table.getInserts();
+			trieProbesSeen = table.getProbes();
+			maxProbeChain = table.getMaxProbes();
+			double fillRatio = table.getFillRatio();
+			metrics.add(this, fillRatio);
+
+			if (event.shouldCommit()) {
+				long count = 0;
+				for (long n : tokens)
+					count += n;
+				event.chars = chars;
+				event.tokens = count;
+				event.commentSkipTime = commentNanos;
+				event.pushbacks = pushbacks;
+				event.trieInserts = trieInserts;
+				event.trieProbes = trieProbes;
+				event.trieFillRatio = fillRatio;
+				event.commit();
+			}
+
+			Arrays.fill(tokens, 0);
+			chars = comments = commentNanos = pushbacks = trieInserts = trieProbes = 0;
+			pending = 0;
+			startEvent();
+		}
+
+
+		private void startEvent() {
+			event = new BatchEvent();
+			event.begin();
+		}
+
+	} // end of class Recorder
+
+
+	/**
+	 * Immutable copy of the counters
+	 */
+	public static final class Snapshot {
+		private final long[] 	tokens;
+		private final long 		chars;
+		private final long 		comments;
+		private final long 		commentNanos;
+		private final long 		pushbacks;
+		private final long 		trieInserts;
+		private final long 		trieProbes;
+		private final int 		maxProbeChain;
+		private final double 	trieFillRatio;
+
+
+		private Snapshot(LexMetrics m) {
+			tokens = m.tokens.clone();
+			chars = m.chars;
+			comments = m.comments;
+			commentNanos = m.commentNanos;
+			pushbacks = m.pushbacks;
+			trieInserts = m.trieInserts;
+			trieProbes = m.trieProbes;
+			maxProbeChain = m.maxProbeChain;
+			trieFillRatio = m.trieFillRatio;
+		}
+
+
+		public long getCharsConsumed() { return chars; }
+		public long getCommentsSkipped() { return comments; }
+		public long getCommentSkipNanos() { return commentNanos; }
+		public long getPushbacks() { return pushbacks; }
+		public long getTrieInserts() { return trieInserts; }
+		public long getTrieProbes() { return trieProbes; }
+		public int getMaxProbeChain() { return maxProbeChain; }
+		public double getTrieFillRatio() { return trieFillRatio; }
+
+
+		/**
+		 * @param kind - a token kind
+		 * @return number of tokens of that kind
+		 */
+		public long getTokens(ToyLexer.ToyToken kind) {
+			return tokens[kind.getTokenNumber()];
+		}
+
+
+		/**
+		 * @return number of tokens of all kinds
+		 */
+		public long getTokenCount() {
+			long total = 0;
+			for (long n : tokens)
+				total += n;
+			return total;
+		}
+
+
+		/**
+		 * @return token counts by token name, leaving out kinds not seen
+		 */
+		public Map<String, Long> getTokensByKind() {
+			Map<String, Long> byKind = new LinkedHashMap<String, Long>();
+			for (ToyLexer.ToyToken t : ToyLexer.ToyToken.values()) {
+				if (tokens[t.getTokenNumber()] != 0)
+					byKind.put(t.toString(), tokens[t.getTokenNumber()]);
+			}
+			return byKind;
+		}
+
+
+		/**
+		 * @return average number of probes an insert made
+		 */
+		public double getMeanProbeChain() {
+			return (trieInserts == 0) ? 0 : (double) trieProbes / trieInserts;
+		}
+
+
+		public String toString() {
+			return String.format("%d chars, %d tokens, %d comments skipped in %.3f ms, %d pushbacks, "
+					+ "%d symbol inserts (mean chain %.2f, max %d), symbol table %.1f%% full",
+					chars, getTokenCount(), comments, commentNanos / 1e6, pushbacks,
+					trieInserts, getMeanProbeChain(), maxProbeChain, trieFillRatio * 100);
+		}
+
+	} // end of class Snapshot
+
+
+	/**
+	 * JFR event for one batch of counts reported by a lexer. The event spans
+	 * the time since the lexer's previous report.
+	 */
+	@Name("cs411.toylexer.Batch")
+	@Label("Toy Lexer Batch")
+	@Category("Toy Lexer")
+	@Description("Counts of a lexer since its previous report")
+	static final class BatchEvent extends Event {
+		@Label("Chars Consumed")
+		long chars;
+
+		@Label("Tokens")
+		long tokens;
+
+		@Label("Comment Skip Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long commentSkipTime;
+
+		@Label("Pushbacks")
+		long pushbacks;
+
+		@Label("Symbol Inserts")
+		long trieInserts;
+
+		@Label("Symbol Probes")
+		long trieProbes;
+
+		@Label("Symbol Table Fill Ratio")
+		double trieFillRatio;
+	}
+
+} // end of class LexMetrics
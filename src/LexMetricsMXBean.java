@@ -0,0 +1,67 @@
+import java.util.Map;
+
+/**
+ * Management interface of LexMetrics. Registering a LexMetrics with JMX
+ * (see LexMetrics.register) makes these attributes readable from JConsole,
+ * VisualVM or any other JMX client while the lexers are running.
+ */
+public interface LexMetricsMXBean {
+
+	/**
+	 * @return number of input chars the lexers have consumed
+	 */
+	long getCharsConsumed();
+
+	/**
+	 * @return number of tokens scanned
+	 */
+	long getTokenCount();
+
+	/**
+	 * @return number of tokens scanned, by token name
+	 */
+	Map<String, Long> getTokensByKind();
+
+	/**
+	 * @return number of comments skipped
+	 */
+	long getCommentsSkipped();
+
+	/**
+	 * @return time spent skipping comments, in nanoseconds
+	 */
+	long getCommentSkipNanos();
+
+	/**
+	 * @return number of chars read past the end of a token and pushed back
+	 */
+	long getPushbacks();
+
+	/**
+	 * @return number of names inserted into symbol tables
+	 */
+	long getTrieInserts();
+
+	/**
+	 * @return average number of probes an insert made (next links followed
+	 * in a trie, see SymbolTable)
+	 */
+	double getMeanProbeChain();
+
+	/**
+	 * @return most probes a single insert made
+	 */
+	int getMaxProbeChain();
+
+	/**
+	 * @return fraction of the storage in use in the symbol table that
+	 * reported last
+	 */
+	double getTrieFillRatio();
+
+	/**
+	 * Sets all counters back to zero
+	 */
+	void reset();
+
+} // end of interface LexMetricsMXBean
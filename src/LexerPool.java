@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+
+/**
+ * This class keeps finished lexers so batch drivers can reuse them (see
+ * ToyLexer.reset) instead of building a new window, token buffer, symbol
+ * table and string pool for every file. When many small files are lexed,
+ * that setup costs more than the lexing itself.
+ *
+ * Every thread has its own list of idle lexers, so acquire() and release()
+ * take no lock. A lexer is meant to be released on the thread that acquired
+ * it; released on another thread, it just joins that thread's list. A lexer
+ * keeps its settings (streaming, scanner, metrics, limits) when it is
+ * reused, so callers should set the ones they need after acquire().
+ */
+public class LexerPool {
+	private static final int DEFAULT_MAX_IDLE = 2;
+
+	private final int 								maxIdle;
+	private final ThreadLocal<ArrayDeque<ToyLexer>> idle;
+
+
+	/**
+	 * Constructor
+	 */
+	public LexerPool() {
+		this(DEFAULT_MAX_IDLE);
+	}
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxIdle - most idle lexers kept per thread
+	 */
+	public LexerPool(int maxIdle) {
+		if (maxIdle < 1)
+			throw new IllegalArgumentException("a pool has to keep at least one lexer");
+		this.maxIdle = maxIdle;
+		this.idle = ThreadLocal.withInitial(ArrayDeque::new);
+	}
+
+
+	/**
+	 * Returns a lexer for a file, reusing an idle one of this thread if
+	 * there is one
+	 *
+	 * @param file - path to the input file
+	 * @return lexer ready to scan the file
+	 * @throws IOException if the file can't be opened or mapped
+	 */
+	public ToyLexer acquire(Path file) throws IOException {
+		ToyLexer lexer = idle.get().pollFirst();
+		if (lexer == null)
+			return new ToyLexer(file);
+		lexer.reset(file);
+		return lexer;
+	}
+
+
+	/**
+	 * Returns a lexer for a stream, reusing an idle one of this thread if
+	 * there is one
+	 *
+	 * @param source - a Reader containing a stream to the input file
+	 * @return lexer ready to scan the stream
+	 */
+	public ToyLexer acquire(Reader source) {
+		ToyLexer lexer = idle.get().pollFirst();
+		if (lexer == null)
+			return new ToyLexer(source);
+		lexer.reset(source);
+		return lexer;
+	}
+
+
+	/**
+	 * Returns a lexer for input that is already in memory, reusing an idle
+	 * one of this thread if there is one
+	 *
+	 * @param text - array holding the input
+	 * @param length - number of input chars in text
+	 * @return lexer ready to scan the input
+	 */
+	public ToyLexer acquire(char[] text, int length) {
+		ToyLexer lexer = idle.get().pollFirst();
+		if (lexer == null)
+			return new ToyLexer(text, length);
+		lexer.reset(text, length);
+		return lexer;
+	}
+
+
+	/**
+	 * Gives a lexer back to the pool. Its tokens, lexemes and symbol table
+	 * must not be used afterwards. The lexer is closed first (see
+	 * ToyLexer.close), so its file is closed and oversized arrays are
+	 * dropped now rather than when it is next acquired. If the thread
+	 * already has maxIdle idle lexers, the lexer is dropped.
+	 *
+	 * @param lexer - lexer that is no longer needed
+	 */
+	public void release(ToyLexer lexer) {
+		lexer.close();
+		ArrayDeque<ToyLexer> lexers = idle.get();
+		if (lexers.size() < maxIdle)
+			lexers.addFirst(lexer);
+	}
+
+} // end of class LexerPool
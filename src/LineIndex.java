@@ -0,0 +1,218 @@
+import java.util.Arrays;
+
+/**
+ * This class records where the lines of a source start, as a sorted array of
+ * offsets. The lexer adds an entry for every line break it scans past (a
+ * '\n', a "\r\n" or a '\r' on its own), so line structure is kept without
+ * putting line break tokens in the token stream. An offset is mapped to its
+ * line (and column) with a binary search, and a line and column back to an
+ * offset with an array lookup.
+ *
+ * Lines and columns count from 1. Line 1 starts at offset 0 and is not
+ * stored; line n + 1 starts right after the n-th line break.
+ *
+ * Like TokenBuffer, an edit (see replace) leaves the offsets after it as
+ * they are and keeps a pending shift, which is added when they are read.
+ */
+public class LineIndex {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private int[] 	starts;		// starts[i] is the offset of line i + 2
+	private int 	size;
+	private int 	shiftFrom = Integer.MAX_VALUE;	// first entry with a pending shift
+	private int 	shift;		// pending shift of offsets
+
+
+	/**
+	 * Constructor for an empty index, where the whole source is line 1
+	 */
+	public LineIndex() {
+		starts = new int[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+
+	/**
+	 * Constructor for an index read back from somewhere else
+	 *
+	 * @param starts - start offsets of line 2 on, in increasing order
+	 * @param size - number of offsets used in starts
+	 */
+	LineIndex(int[] starts, int size) {
+		this.starts = starts;
+		this.size = size;
+	}
+
+
+	/**
+	 * Adds the start of the next line
+	 *
+	 * @param offset - offset of the char after a line break
+	 */
+	void add(int offset) {
+		if (size == starts.length)
+			starts = Arrays.copyOf(starts, size * 2);
+		starts[size] = offset - shiftAt(size);
+		size++;
+	}
+
+
+	/**
+	 * Moves the start of the last line, for a line break of more than one
+	 * char
+	 *
+	 * @param offset - new start of the last line
+	 */
+	void moveLast(int offset) {
+		starts[size - 1] = offset - shiftAt(size - 1);
+	}
+
+
+	/**
+	 * Adds the line starts of another index that come after an offset,
+	 * moved by shift
+	 *
+	 * @param src - index to take line starts from
+	 * @param after - only line starts past this offset in src are taken
+	 * @param shift - amount added to each line start taken
+	 */
+	void append(LineIndex src, int after, int shift) {
+		for (int i = src.lineOf(after) - 1; i < src.size; i++)
+			add(src.start(i) + shift);
+	}
+
+
+	/**
+	 * Replaces a range of line starts with all line starts of another index,
+	 * and moves the line starts after the range by shift. Those are moved
+	 * with one array copy and shifted when they are read.
+	 *
+	 * @param from - index of the first line start to replace (the start of
+	 * line from + 2)
+	 * @param to - index after the last line start to replace
+	 * @param src - index holding the new line starts
+	 * @param shift - amount added to the line starts after the range
+	 */
+	void replace(int from, int to, LineIndex src, int shift) {
+		int n = src.size;
+		moveShift(to);
+		if (size - (to - from) + n > starts.length)
+			starts = Arrays.copyOf(starts, Math.max(size - (to - from) + n, starts.length * 2));
+		if (from + n != to)
+			System.arraycopy(starts, to, starts, from + n, size - to);
+		size += n - (to - from);
+		shiftFrom = from + n;
+		for (int i = 0; i < n; i++)
+			starts[from + i] = src.start(i);
+		this.shift += shift;
+	}
+
+
+	/**
+	 * Drops all lines after the given one
+	 *
+	 * @param lines - number of lines to keep
+	 */
+	void truncate(int lines) {
+		size = Math.max(lines - 1, 0);
+		if (size <= shiftFrom)
+			dropShift();
+	}
+
+
+	/**
+	 * @return number of lines, which is one more than the number of line
+	 * breaks
+	 */
+	public int lineCount() {
+		return size + 1;
+	}
+
+
+	/**
+	 * Returns the line an offset is on. A line break is on the line it ends.
+	 *
+	 * @param offset - source offset
+	 * @return line number, counting from 1
+	 */
+	public int lineOf(int offset) {
+		int lo = 0, hi = size;	// number of line starts <= offset is in [lo, hi]
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (start(mid) <= offset)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo + 1;
+	}
+
+
+	/**
+	 * Returns the column of an offset in its line
+	 *
+	 * @param offset - source offset
+	 * @return column, counting from 1
+	 */
+	public int columnOf(int offset) {
+		return offset - lineStart(lineOf(offset)) + 1;
+	}
+
+
+	/**
+	 * @param line - line number, counting from 1
+	 * @return offset of the first char of the line
+	 */
+	public int lineStart(int line) {
+		if (line < 1 || line > size + 1)
+			throw new IndexOutOfBoundsException("line " + line + " of " + (size + 1));
+		return (line == 1) ? 0 : start(line - 2);
+	}
+
+
+	/**
+	 * Returns the offset of a line and column. Columns past the end of the
+	 * line are not checked.
+	 *
+	 * @param line - line number, counting from 1
+	 * @param column - column, counting from 1
+	 * @return source offset
+	 */
+	public int offsetOf(int line, int column) {
+		return lineStart(line) + column - 1;
+	}
+
+
+	private int start(int i) 	{ return starts[i] + shiftAt(i); }
+
+	private int shiftAt(int i) 	{ return (i >= shiftFrom) ? shift : 0; }
+
+
+	/**
+	 * Moves the start of the pending shift to another entry (see
+	 * TokenBuffer.moveShift)
+	 *
+	 * @param i - index of the first entry to be shifted
+	 */
+	private void moveShift(int i) {
+		if (shift == 0) {
+			shiftFrom = i;
+			return;
+		}
+		for (int k = shiftFrom; k < Math.min(i, size); k++)
+			starts[k] += shift;
+		for (int k = i; k < Math.min(shiftFrom, size); k++)
+			starts[k] -= shift;
+		shiftFrom = i;
+	}
+
+
+	/**
+	 * Forgets the pending shift once no entry has it
+	 */
+	private void dropShift() {
+		shiftFrom = Integer.MAX_VALUE;
+		shift = 0;
+	}
+
+} // end of class LineIndex
@@ -0,0 +1,222 @@
+import java.util.Arrays;
+
+/**
+ * This class implements the pool the lexer interns decoded string constants
+ * into. Every distinct string gets one index, numbered from 0 in the order
+ * strings were first interned, and a _stringconstant token carries only that
+ * index as its value. A string repeated any number of times is stored once.
+ *
+ * The chars of all strings are kept end to end in one growable char arena,
+ * with the offset and length of each string in parallel int arrays. Strings
+ * are found with an open addressing hash table of indexes, probed linearly
+ * and kept at most half full. The hash is mixed so that its low bits, which
+ * pick the slot, depend on every char; short strings differing only in their
+ * last chars would otherwise land in runs of neighbouring slots. Interning a
+ * string that is already in the pool allocates nothing.
+ */
+public class StringPool {
+	private static final int INITIAL_SLOTS = 64;
+	private static final int INITIAL_ARENA = 1024;
+	public static final int NOT_FOUND = -1;
+
+	private char[] 	arena;
+	private int 	arenaSize;
+	private int[] 	offsets;	// by index
+	private int[] 	lengths;
+	private int[] 	hashes;
+	private int[] 	slots;		// index + 1 of the string in each slot, 0 if empty
+	private int 	size;
+	private int 	lastProbes;	// slots the last find stepped past
+
+
+	/**
+	 * Constructor
+	 */
+	public StringPool() {
+		arena = new char[INITIAL_ARENA];
+		offsets = new int[INITIAL_SLOTS / 2];
+		lengths = new int[INITIAL_SLOTS / 2];
+		hashes = new int[INITIAL_SLOTS / 2];
+		slots = new int[INITIAL_SLOTS];
+		arenaSize = 0;
+		size = 0;
+	}
+
+
+	/**
+	 * Returns the index of a string, adding the string if it is not in the
+	 * pool yet.
+	 *
+	 * @param buf - array holding the string
+	 * @param off - index of the first char of the string
+	 * @param len - length of the string
+	 * @return index of the string in the pool
+	 */
+	public int intern(char[] buf, int off, int len) {
+		int hash = hash(buf, off, len);
+		int slot = find(buf, off, len, hash);
+		if (slots[slot] != 0)
+			return slots[slot] - 1;
+
+		if (size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			lengths = Arrays.copyOf(lengths, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		if (arenaSize + len > arena.length)
+			arena = Arrays.copyOf(arena, Math.max(arenaSize + len, arena.length * 2));
+		System.arraycopy(buf, off, arena, arenaSize, len);
+		offsets[size] = arenaSize;
+		lengths[size] = len;
+		hashes[size] = hash;
+		arenaSize += len;
+		slots[slot] = ++size;
+		if (size * 2 > slots.length)
+			rehash();
+		return size - 1;
+	}
+
+
+	/**
+	 * Returns the index of a string, adding the string if it is not in the
+	 * pool yet.
+	 *
+	 * @param s - string to be interned
+	 * @return index of the string in the pool
+	 */
+	public int intern(String s) {
+		return intern(s.toCharArray(), 0, s.length());
+	}
+
+
+	/**
+	 * Looks up a string without adding it
+	 *
+	 * @param s - string to look for
+	 * @return index of the string, or NOT_FOUND
+	 */
+	public int lookup(String s) {
+		return lookup(s.toCharArray(), 0, s.length());
+	}
+
+
+	/**
+	 * Looks up a string held in a char array without adding it
+	 *
+	 * @param buf - array holding the string
+	 * @param off - index of the first char of the string
+	 * @param len - length of the string
+	 * @return index of the string, or NOT_FOUND
+	 */
+	public int lookup(char[] buf, int off, int len) {
+		int slot = find(buf, off, len, hash(buf, off, len));
+		return slots[slot] - 1;
+	}
+
+
+	/**
+	 * Removes all strings. The arrays are kept for reuse.
+	 */
+	public void clear() {
+		Arrays.fill(slots, 0);
+		arenaSize = 0;
+		size = 0;
+	}
+
+
+	/**
+	 * @return number of distinct strings in the pool
+	 */
+	public int size() { return size; }
+
+
+	/**
+	 * @param index - index of a string in the pool
+	 * @return number of chars in the string
+	 */
+	public int length(int index) { return lengths[checkIndex(index)]; }
+
+
+	/**
+	 * @param index - index of a string in the pool
+	 * @return the string
+	 */
+	public String get(int index) {
+		return new String(arena, offsets[checkIndex(index)], lengths[index]);
+	}
+
+
+	/**
+	 * Copies the chars of a string into an array
+	 *
+	 * @param index - index of a string in the pool
+	 * @param dst - array to copy into
+	 * @param dstBegin - index in dst of the first char copied
+	 */
+	public void getChars(int index, char[] dst, int dstBegin) {
+		System.arraycopy(arena, offsets[checkIndex(index)], dst, dstBegin, lengths[index]);
+	}
+
+
+	/**
+	 * @return number of slots the last intern() or lookup() stepped past
+	 * the slot its string hashes to
+	 */
+	int lastProbes() { return lastProbes; }
+
+
+	/**
+	 * @return number of slots in the hash table
+	 */
+	int slotCount() { return slots.length; }
+
+
+	/**
+	 * Finds the slot holding a string, or the empty slot where it would go
+	 */
+	private int find(char[] buf, int off, int len, int hash) {
+		int mask = slots.length - 1;
+		int probes = 0;
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			int s = slots[slot] - 1;
+			if (s < 0 || (hashes[s] == hash && lengths[s] == len
+					&& Arrays.equals(arena, offsets[s], offsets[s] + len, buf, off, off + len))) {
+				lastProbes = probes;
+				return slot;
+			}
+			probes++;
+		}
+	}
+
+
+	/**
+	 * Doubles the hash table and puts every string back in it
+	 */
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int s = 0; s < size; s++) {
+			int slot = hashes[s] & mask;
+			while (slots[slot] != 0)
+				slot = (slot + 1) & mask;
+			slots[slot] = s + 1;
+		}
+	}
+
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("string " + index + " of " + size);
+		return index;
+	}
+
+
+	private static int hash(char[] buf, int off, int len) {
+		int h = 0;
+		for (int i = 0; i < len; i++)
+			h = 31 * h + buf[off + i];
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 15);
+	}
+
+} // end of class StringPool
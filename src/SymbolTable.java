@@ -0,0 +1,121 @@
+import java.io.IOException;
+
+/**
+ * This interface is implemented by the symbol tables a ToyLexer can enter
+ * identifiers into (see ToyLexer.setSymbolTable):
+ *
+ *   trie	ToyLexer.Trie, the switch/symbol/next trie the lexer uses by
+ *   		default, whose inserts follow a chain of next links per char
+ *   hash	HashSymbolTable, the open addressing hash table of a StringPool
+ *   darray	DoubleArraySymbolTable, a double-array trie that finds the child
+ *   		for a char with one addition and one compare
+ *
+ * Every distinct name gets a symbol ID that never changes once handed out.
+ * How IDs are numbered is up to the table, so the same name can have
+ * different IDs in different kinds of table. The counters are read by
+ * LexMetrics; what counts as a probe depends on the table.
+ */
+public interface SymbolTable {
+	int NOT_FOUND = -1;
+
+
+	/**
+	 * Inserts a name held in a char array
+	 *
+	 * @param buf - array holding the name
+	 * @param off - index of the first char of the name
+	 * @param len - length of the name, at least 1
+	 * @return symbol ID of the name, whether it was inserted now or before
+	 */
+	int insert(char[] buf, int off, int len);
+
+
+	/**
+	 * Inserts a name
+	 *
+	 * @param name - name to be inserted
+	 * @return symbol ID of the name
+	 */
+	default int insert(String name) {
+		return insert(name.toCharArray(), 0, name.length());
+	}
+
+
+	/**
+	 * Looks up a name held in a char array without inserting it
+	 *
+	 * @param buf - array holding the name
+	 * @param off - index of the first char of the name
+	 * @param len - length of the name
+	 * @return symbol ID of the name, or NOT_FOUND
+	 */
+	int lookup(char[] buf, int off, int len);
+
+
+	/**
+	 * Looks up a name without inserting it
+	 *
+	 * @param name - name to look for
+	 * @return symbol ID of the name, or NOT_FOUND
+	 */
+	default int lookup(String name) {
+		return lookup(name.toCharArray(), 0, name.length());
+	}
+
+
+	/**
+	 * Removes all names. The counters are kept.
+	 */
+	void clear();
+
+
+	/**
+	 * Writes out the contents of the table
+	 *
+	 * @param out - where the table is written, left open
+	 * @throws IOException
+	 */
+	void dump(Appendable out) throws IOException;
+
+
+	/**
+	 * @return number of calls to insert()
+	 */
+	long getInserts();
+
+
+	/**
+	 * @return probes made by all inserts
+	 */
+	long getProbes();
+
+
+	/**
+	 * @return most probes a single insert made
+	 */
+	int getMaxProbes();
+
+
+	/**
+	 * @return fraction of the table's storage in use
+	 */
+	double getFillRatio();
+
+
+	/**
+	 * Makes an empty table of a kind named on a command line or in a
+	 * benchmark parameter
+	 *
+	 * @param kind - "trie", "hash" or "darray"
+	 * @return new empty table
+	 */
+	static SymbolTable create(String kind) {
+		switch (kind) {
+		case "trie":	return new ToyLexer.Trie();
+		case "hash":	return new HashSymbolTable();
+		case "darray":	return new DoubleArraySymbolTable();
+		default:		throw new IllegalArgumentException("unknown symbol table kind: " + kind);
+		}
+	}
+
+} // end of interface SymbolTable
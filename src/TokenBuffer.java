@@ -0,0 +1,432 @@
+import java.util.Arrays;
+
+/**
+ * This class implements a growable token buffer for the lexer. Instead of one
+ * object per token, every token is stored as a row across parallel int arrays:
+ * its kind (the token number), start offset, length and line in the source,
+ * plus a value (the symbol ID of an identifier or the string pool index of a
+ * string constant).
+ * The arrays grow geometrically as tokens are added.
+ *
+ * The decoded values of numeric constants go into a separate long array, so
+ * they cost nothing for other tokens: the value of an int constant
+ * (ToyLexer.INT_OVERFLOW if it does not fit in a long) and the bits of a
+ * double constant, read back with intValue() and doubleValue(). A numeric
+ * token keeps the index of its number in the value column, where it has no
+ * other value. Numbers of tokens that were removed are only dropped when the
+ * number array is full.
+ *
+ * replace() swaps a range of tokens for others, as an edit does. The start
+ * offsets and lines of the tokens after the range are not changed there;
+ * the change is kept as a pending shift for all tokens from some index on
+ * and added when they are read. The next replace() only moves that index,
+ * so an edit costs time in proportion to the tokens it replaces and the
+ * distance from the previous edit, plus moving the rows after it.
+ */
+public class TokenBuffer {
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final int INT_KIND = ToyLexer.ToyToken._intconstant.getTokenNumber();
+	private static final int DOUBLE_KIND = ToyLexer.ToyToken._doubleconstant.getTokenNumber();
+
+	private int[] 	kinds;
+	private int[] 	starts;
+	private int[] 	lengths;
+	private int[] 	lines;
+	private int[] 	values;
+	private int 	size;
+	private long[] 	numbers;		// values of numeric constants
+	private int 	numberCount;	// entries used in numbers
+	private int 	liveNumbers;	// entries still referenced by a token
+	private int 	shiftFrom = Integer.MAX_VALUE;	// first token with a pending shift
+	private int 	startShift;		// pending shift of start offsets
+	private int 	lineShift;		// pending shift of lines
+
+
+	/**
+	 * Constructor
+	 */
+	public TokenBuffer() {
+		this(INITIAL_CAPACITY);
+	}
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity - number of tokens to make room for up front
+	 */
+	public TokenBuffer(int capacity) {
+		capacity = Math.max(capacity, 16);
+		kinds = new int[capacity];
+		starts = new int[capacity];
+		lengths = new int[capacity];
+		lines = new int[capacity];
+		values = new int[capacity];
+		numbers = new long[16];
+		size = 0;
+	}
+
+
+	/**
+	 * Appends a token to the end of the buffer.
+	 *
+	 * @param kind - token number of the token
+	 * @param start - offset of the first char of the token in the source
+	 * @param length - number of chars in the token
+	 * @param line - line the token starts on
+	 * @param value - symbol ID for identifiers, string pool index for string
+	 * constants, ToyLexer.NO_VALUE otherwise
+	 */
+	public void add(int kind, int start, int length, int line, int value) {
+		add(kind, start, length, line, value, 0);
+	}
+
+
+	/**
+	 * Appends a token to the end of the buffer.
+	 *
+	 * @param kind - token number of the token
+	 * @param start - offset of the first char of the token in the source
+	 * @param length - number of chars in the token
+	 * @param line - line the token starts on
+	 * @param value - symbol ID for identifiers, string pool index for string
+	 * constants, ToyLexer.NO_VALUE otherwise
+	 * @param number - value of an int constant, or the bits of a double
+	 * constant (see Double.doubleToRawLongBits); ignored for other tokens
+	 */
+	public void add(int kind, int start, int length, int line, int value, long number) {
+		if (size == kinds.length)
+			grow();
+		kinds[size] = kind;
+		starts[size] = start;
+		lengths[size] = length;
+		lines[size] = line;
+		if (size >= shiftFrom) {
+			starts[size] -= startShift;
+			lines[size] -= lineShift;
+		}
+		if (isNumber(kind)) {
+			reserveNumbers(1);
+			value = addNumber(number);
+		}
+		values[size] = value;
+		size++;
+	}
+
+
+	/**
+	 * Appends a range of tokens from another buffer, moving their offsets
+	 * and lines by the given amounts.
+	 *
+	 * @param src - buffer to copy from
+	 * @param from - index of the first token to copy
+	 * @param to - index after the last token to copy
+	 * @param startShift - amount added to every start offset
+	 * @param lineShift - amount added to every line
+	 */
+	public void append(TokenBuffer src, int from, int to, int startShift, int lineShift) {
+		if (from < 0 || to > src.size || from > to)
+			throw new IndexOutOfBoundsException("range " + from + ".." + to + " of " + src.size);
+		int n = to - from;
+		while (size + n > kinds.length)
+			grow();
+		reserveNumbers(src.countNumbers(from, to));
+		System.arraycopy(src.kinds, from, kinds, size, n);
+		System.arraycopy(src.starts, from, starts, size, n);
+		System.arraycopy(src.lengths, from, lengths, size, n);
+		System.arraycopy(src.lines, from, lines, size, n);
+		System.arraycopy(src.values, from, values, size, n);
+		for (int i = size, j = from; i < size + n; i++, j++) {
+			starts[i] += startShift + src.startShiftAt(j) - startShiftAt(i);
+			lines[i] += lineShift + src.lineShiftAt(j) - lineShiftAt(i);
+			if (isNumber(kinds[i]))
+				values[i] = addNumber(src.numbers[values[i]]);
+		}
+		size += n;
+	}
+
+
+	/**
+	 * Replaces a range of tokens with all tokens of another buffer, and
+	 * moves the offsets and lines of the tokens after the range by the given
+	 * amounts. The rows after the range are moved with one array copy per
+	 * column; their offsets and lines are shifted when they are read.
+	 *
+	 * @param from - index of the first token to replace
+	 * @param to - index after the last token to replace
+	 * @param src - buffer holding the new tokens
+	 * @param startShift - amount added to the start offsets after the range
+	 * @param lineShift - amount added to the lines after the range
+	 */
+	public void replace(int from, int to, TokenBuffer src, int startShift, int lineShift) {
+		if (from < 0 || to > size || from > to)
+			throw new IndexOutOfBoundsException("range " + from + ".." + to + " of " + size);
+		int n = src.size;
+		reserveNumbers(src.countNumbers(0, n));
+		liveNumbers -= countNumbers(from, to);
+		moveShift(to);
+		while (size - (to - from) + n > kinds.length)
+			grow();
+		if (from + n != to) {
+			int tail = size - to;
+			System.arraycopy(kinds, to, kinds, from + n, tail);
+			System.arraycopy(starts, to, starts, from + n, tail);
+			System.arraycopy(lengths, to, lengths, from + n, tail);
+			System.arraycopy(lines, to, lines, from + n, tail);
+			System.arraycopy(values, to, values, from + n, tail);
+		}
+		size += n - (to - from);
+		shiftFrom = from + n;
+		for (int i = from, j = 0; j < n; i++, j++) {
+			kinds[i] = src.kinds[j];
+			starts[i] = src.starts[j] + src.startShiftAt(j);
+			lengths[i] = src.lengths[j];
+			lines[i] = src.lines[j] + src.lineShiftAt(j);
+			values[i] = isNumber(kinds[i]) ? addNumber(src.numbers[src.values[j]]) : src.values[j];
+		}
+		this.startShift += startShift;
+		this.lineShift += lineShift;
+	}
+
+
+	/**
+	 * Removes all tokens. The arrays are kept for reuse.
+	 */
+	public void clear() {
+		size = 0;
+		numberCount = 0;
+		liveNumbers = 0;
+		dropShift();
+	}
+
+
+	/**
+	 * Removes the tokens from index newSize on
+	 *
+	 * @param newSize - number of tokens to keep
+	 */
+	public void truncate(int newSize) {
+		if (newSize < 0 || newSize > size)
+			throw new IndexOutOfBoundsException("size " + newSize + " of " + size);
+		liveNumbers -= countNumbers(newSize, size);
+		size = newSize;
+		if (size <= shiftFrom)
+			dropShift();
+	}
+
+
+	/**
+	 * Replaces the value of a token that is not a numeric constant
+	 *
+	 * @param i - index of the token
+	 * @param value - new value
+	 */
+	public void setValue(int i, int value) {
+		if (isNumber(kinds[checkIndex(i)]))
+			throw new IllegalArgumentException("token " + i + " is a numeric constant");
+		values[i] = value;
+	}
+
+
+	public int size() 			{ return size; }
+	public int capacity() 		{ return kinds.length; }
+	public int kind(int i) 		{ return kinds[checkIndex(i)]; }
+	public int start(int i) 	{ return starts[checkIndex(i)] + startShiftAt(i); }
+	public int length(int i) 	{ return lengths[checkIndex(i)]; }
+	public int line(int i) 		{ return lines[checkIndex(i)] + lineShiftAt(i); }
+	public int value(int i) 	{ return valueAt(checkIndex(i)); }
+
+
+	/**
+	 * @param i - index of an int constant token
+	 * @return value of the constant, or ToyLexer.INT_OVERFLOW if it does not
+	 * fit in a long
+	 */
+	public long intValue(int i) { return numberAt(checkIndex(i)); }
+
+
+	/**
+	 * @param i - index of a double constant token
+	 * @return value of the constant, correctly rounded
+	 */
+	public double doubleValue(int i) { return Double.longBitsToDouble(numberAt(checkIndex(i))); }
+
+
+	/**
+	 * Returns a cursor positioned before the first token. A cursor can be
+	 * reset and reused, so iterating does not allocate anything.
+	 *
+	 * @return new cursor over this buffer
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+
+	/**
+	 * Checks that index i refers to a token in the buffer
+	 *
+	 * @param i - index to be checked
+	 * @return i
+	 */
+	private int checkIndex(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("token " + i + " of " + size);
+		return i;
+	}
+
+
+	private int startShiftAt(int i) 	{ return (i >= shiftFrom) ? startShift : 0; }
+
+	private int lineShiftAt(int i) 		{ return (i >= shiftFrom) ? lineShift : 0; }
+
+
+	/**
+	 * Moves the start of the pending shift to another token, by adding it
+	 * to the rows it no longer covers or taking it off the rows it now
+	 * covers
+	 *
+	 * @param i - index of the first token to be shifted
+	 */
+	private void moveShift(int i) {
+		if (startShift == 0 && lineShift == 0) {
+			shiftFrom = i;
+			return;
+		}
+		for (int k = shiftFrom; k < Math.min(i, size); k++) {
+			starts[k] += startShift;
+			lines[k] += lineShift;
+		}
+		for (int k = i; k < Math.min(shiftFrom, size); k++) {
+			starts[k] -= startShift;
+			lines[k] -= lineShift;
+		}
+		shiftFrom = i;
+	}
+
+
+	/**
+	 * Forgets the pending shift once no token has it
+	 */
+	private void dropShift() {
+		shiftFrom = Integer.MAX_VALUE;
+		startShift = 0;
+		lineShift = 0;
+	}
+
+
+	private static boolean isNumber(int kind) { return kind == INT_KIND || kind == DOUBLE_KIND; }
+
+	private int valueAt(int i) 		{ return isNumber(kinds[i]) ? ToyLexer.NO_VALUE : values[i]; }
+
+	private long numberAt(int i) 	{ return isNumber(kinds[i]) ? numbers[values[i]] : 0; }
+
+
+	/**
+	 * @return number of numeric constants among the tokens from index from
+	 * to index to
+	 */
+	private int countNumbers(int from, int to) {
+		int n = 0;
+		for (int i = from; i < to; i++) {
+			if (isNumber(kinds[i]))
+				n++;
+		}
+		return n;
+	}
+
+
+	/**
+	 * Stores a number in the number array, which must have room for it
+	 *
+	 * @param number - value or bits of a numeric constant
+	 * @return index of the number
+	 */
+	private int addNumber(long number) {
+		numbers[numberCount] = number;
+		liveNumbers++;
+		return numberCount++;
+	}
+
+
+	/**
+	 * Makes room for n more numbers. When the number array is full, the
+	 * numbers still in use are copied to a new array in token order, which
+	 * drops the ones left behind by removed tokens. The new array has
+	 * spare room in proportion to the number of tokens, so the tokens are
+	 * not walked again until about that many numbers were added.
+	 *
+	 * @param n - number of numbers about to be added
+	 */
+	private void reserveNumbers(int n) {
+		if (numberCount + n <= numbers.length)
+			return;
+		int capacity = Math.max(2 * (liveNumbers + n) + size / 16, 16);
+		if (liveNumbers == numberCount) {
+			numbers = Arrays.copyOf(numbers, capacity);
+			return;
+		}
+		long[] live = new long[capacity];
+		int k = 0;
+		for (int i = 0; i < size; i++) {
+			if (isNumber(kinds[i])) {
+				live[k] = numbers[values[i]];
+				values[i] = k++;
+			}
+		}
+		numbers = live;
+		numberCount = k;
+	}
+
+
+	/**
+	 * Doubles the capacity of all columns
+	 */
+	private void grow() {
+		int capacity = kinds.length * 2;
+		kinds = Arrays.copyOf(kinds, capacity);
+		starts = Arrays.copyOf(starts, capacity);
+		lengths = Arrays.copyOf(lengths, capacity);
+		lines = Arrays.copyOf(lines, capacity);
+		values = Arrays.copyOf(values, capacity);
+	}
+
+
+	/**
+	 * Forward cursor over the tokens in the buffer. Call next() to move to
+	 * the following token, then read its columns through the accessors.
+	 */
+	public class Cursor {
+		private int index = -1;
+
+
+		/**
+		 * Moves the cursor to the next token
+		 *
+		 * @return true if there is a token at the new position
+		 */
+		public boolean next() {
+			if (index < size)
+				index++;
+			return index < size;
+		}
+
+
+		/**
+		 * Moves the cursor back before the first token
+		 */
+		public void reset() { index = -1; }
+
+
+		public int index() 	{ return index; }
+		public int kind() 	{ return kinds[index]; }
+		public int start() 	{ return starts[index] + startShiftAt(index); }
+		public int length() { return lengths[index]; }
+		public int line() 	{ return lines[index] + lineShiftAt(index); }
+		public int value() 	{ return valueAt(index); }
+		public long intValue() 		{ return numberAt(index); }
+		public double doubleValue() { return Double.longBitsToDouble(numberAt(index)); }
+
+	} // end of class Cursor
+
+} // end of class TokenBuffer
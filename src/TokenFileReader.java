@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class reads a token file written by TokenFileWriter. The file is
+ * memory mapped. Only the header, the symbol IDs, the string offsets and the
+ * line index are read up front; tokens are decoded one at a time as a cursor
+ * moves over them, and lexemes are views over the mapped lexeme section.
+ */
+public class TokenFileReader {
+	private final ByteBuffer 	data;			// header, symbols and tokens
+	private final CharBuffer 	text;			// lexeme section, null if there is none
+	private final int 			tokenCount;
+	private final int[] 		symbolIds;
+	private final int[] 		symbolNameOffsets;	// position of each name in data
+	private final int[] 		symbolNameLengths;
+	private final int[] 		stringOffsets;		// position of each pooled string in data
+	private final int[] 		stringLengths;
+	private final LineIndex 	lines;
+	private final int 			tokenOffset;
+
+
+	/**
+	 * Constructor. Maps the file and reads its header and symbol section.
+	 *
+	 * @param file - token file
+	 * @throws IOException if the file is not a token file of a known version
+	 */
+	public TokenFileReader(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+			if (size < 6 || head.getInt(0) != TokenFileWriter.MAGIC)
+				throw new IOException(file + " is not a token file");
+			if (head.get(4) != TokenFileWriter.VERSION)
+				throw new IOException(file + " has unsupported token file version " + head.get(4));
+			boolean hasText = (head.get(5) & TokenFileWriter.FLAG_LEXEMES) != 0;
+
+			long tokenBytes, textLength;
+			try {
+				head.position(6);
+				tokenCount = (int) readVarint(head);
+				int symbolCount = (int) readVarint(head);
+				int stringCount = (int) readVarint(head);
+				int lineStartCount = (int) readVarint(head);
+				tokenBytes = readVarint(head);
+				textLength = readVarint(head);
+
+				symbolIds = new int[symbolCount];
+				symbolNameOffsets = new int[symbolCount];
+				symbolNameLengths = new int[symbolCount];
+				for (int s = 0; s < symbolCount; s++) {
+					symbolIds[s] = (int) readVarint(head);
+					symbolNameLengths[s] = (int) readVarint(head);
+					symbolNameOffsets[s] = head.position();
+					head.position(head.position() + symbolNameLengths[s]);
+				}
+				stringOffsets = new int[stringCount];
+				stringLengths = new int[stringCount];
+				for (int s = 0; s < stringCount; s++) {
+					stringLengths[s] = (int) readVarint(head);
+					stringOffsets[s] = head.position();
+					head.position(head.position() + stringLengths[s]);
+				}
+				int[] lineStarts = new int[lineStartCount];
+				int lineStart = 0;
+				for (int l = 0; l < lineStartCount; l++) {
+					lineStart += (int) readVarint(head);
+					lineStarts[l] = lineStart;
+				}
+				lines = new LineIndex(lineStarts, lineStartCount);
+				tokenOffset = head.position();
+			} catch (RuntimeException e) {	// ran off the end of the buffer
+				throw new IOException(file + " is truncated or damaged", e);
+			}
+
+			long textOffset = tokenOffset + tokenBytes;
+			if (textOffset + 2 * textLength != size)
+				throw new IOException(file + " is truncated or damaged");
+			if (textOffset > Integer.MAX_VALUE)
+				throw new IOException(file + " is too large to map");
+			data = head.limit((int) textOffset);
+			text = hasText ? channel.map(FileChannel.MapMode.READ_ONLY, textOffset, 2 * textLength)
+					.asCharBuffer() : null;
+		}
+	}
+
+
+	/**
+	 * @return number of tokens in the file
+	 */
+	public int size() { return tokenCount; }
+
+
+	/**
+	 * @return number of symbols in the symbol section
+	 */
+	public int symbolCount() { return symbolIds.length; }
+
+
+	/**
+	 * @param s - index in the symbol section
+	 * @return symbol ID the lexer gave the symbol
+	 */
+	public int symbolId(int s) { return symbolIds[s]; }
+
+
+	/**
+	 * @param s - index in the symbol section
+	 * @return name of the symbol
+	 */
+	public String symbolName(int s) {
+		byte[] name = new byte[symbolNameLengths[s]];
+		data.get(symbolNameOffsets[s], name);
+		return new String(name, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * @return number of strings in the string section
+	 */
+	public int stringCount() { return stringOffsets.length; }
+
+
+	/**
+	 * @param s - string pool index, the value of a string constant token
+	 * @return the decoded string constant
+	 */
+	public String string(int s) {
+		byte[] string = new byte[stringLengths[s]];
+		data.get(stringOffsets[s], string);
+		return new String(string, StandardCharsets.UTF_8);
+	}
+
+
+	/**
+	 * @return index of the line starts in the source
+	 */
+	public LineIndex getLineIndex() { return lines; }
+
+
+	/**
+	 * @return true if the file has a lexeme section
+	 */
+	public boolean hasLexemes() { return text != null; }
+
+
+	/**
+	 * Returns the source text the token offsets point into, as a view over
+	 * the mapped file
+	 *
+	 * @return source text
+	 */
+	public CharSequence getSource() {
+		if (text == null)
+			throw new IllegalStateException("the token file has no lexeme section");
+		return text.duplicate();
+	}
+
+
+	/**
+	 * Returns a cursor positioned before the first token
+	 *
+	 * @return new cursor over the tokens in the file
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+
+	/**
+	 * Reads an unsigned LEB128 number at the buffer's position
+	 */
+	private static long readVarint(ByteBuffer buf) {
+		long n = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buf.get();
+			n |= (long) (b & 0x7F) << shift;
+			if (b >= 0)
+				return n;
+		}
+	}
+
+
+	private static int unzigzag(long n) {
+		int i = (int) n;
+		return (i >>> 1) ^ -(i & 1);
+	}
+
+
+	/**
+	 * Forward cursor over the tokens in the file, with the same accessors as
+	 * TokenBuffer.Cursor. Each call to next() decodes one token.
+	 */
+	public class Cursor {
+		private int index = -1;
+		private int offset = tokenOffset;
+		private int kind, start, length, line, value;
+		private long number;
+
+
+		/**
+		 * Moves the cursor to the next token
+		 *
+		 * @return true if there is a token at the new position
+		 */
+		public boolean next() {
+			if (index + 1 >= tokenCount) {
+				index = tokenCount;
+				return false;
+			}
+			index++;
+			kind = (int) varint();
+			start += unzigzag(varint());
+			length = (int) varint();
+			line += unzigzag(varint());
+			number = 0;
+			if (kind == ToyLexer.ToyToken._intconstant.getTokenNumber()) {
+				number = varint() - 1;
+				value = ToyLexer.NO_VALUE;
+			} else if (kind == ToyLexer.ToyToken._doubleconstant.getTokenNumber()) {
+				number = data.getLong(offset);
+				offset += Long.BYTES;
+				value = ToyLexer.NO_VALUE;
+			} else {
+				long stored = varint();
+				if (kind == ToyLexer.ToyToken._id.getTokenNumber())
+					value = (stored == 0) ? ToyLexer.NO_VALUE : symbolIds[(int) stored - 1];
+				else
+					value = unzigzag(stored);
+			}
+			return true;
+		}
+
+
+		/**
+		 * Moves the cursor back before the first token
+		 */
+		public void reset() {
+			index = -1;
+			offset = tokenOffset;
+			start = 0;
+			line = 0;
+		}
+
+
+		public int index() 	{ return index; }
+		public int kind() 	{ return kind; }
+		public int start() 	{ return start; }
+		public int length() { return length; }
+		public int line() 	{ return line; }
+		public int value() 	{ return value; }
+		public long intValue() 		{ return number; }
+		public double doubleValue() { return Double.longBitsToDouble(number); }
+
+
+		/**
+		 * @return text of the token as a view over the mapped lexeme section
+		 */
+		public CharSequence lexeme() {
+			if (text == null)
+				throw new IllegalStateException("the token file has no lexeme section");
+			return text.subSequence(start, start + length);
+		}
+
+
+		private long varint() {
+			long n = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = data.get(offset++);
+				n |= (long) (b & 0x7F) << shift;
+				if (b >= 0)
+					return n;
+			}
+		}
+
+	} // end of class Cursor
+
+} // end of class TokenFileReader
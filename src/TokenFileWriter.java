@@ -0,0 +1,281 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * This class writes the tokens of a lexer to a compact binary token file,
+ * which TokenFileReader maps back in. Other tools can then read the tokens
+ * without lexing the source again.
+ *
+ * File layout (version 4). Fixed size fields are big-endian, "varint" is an
+ * unsigned LEB128 number and "zigzag" a signed number zigzag encoded into a
+ * varint:
+ *
+ *   magic        4 bytes   "TOYT"
+ *   version      1 byte
+ *   flags        1 byte    bit 0: lexeme section present
+ *   tokenCount   varint
+ *   symbolCount  varint
+ *   stringCount  varint
+ *   lineCount    varint    number of line starts after line 1
+ *   tokenBytes   varint    size of the token section
+ *   textLength   varint    chars in the lexeme section, 0 if there is none
+ *   symbols      symbolCount x (id varint, name length varint, name UTF-8)
+ *   strings      stringCount x (length varint, string UTF-8)
+ *   lines        lineCount x (line start delta varint)
+ *   tokens       tokenCount x (kind varint, start delta zigzag, length varint,
+ *                              line delta zigzag, value)
+ *   lexemes      textLength x UTF-16 char
+ *
+ * The symbol section holds every symbol ID used by an identifier token, with
+ * its name, in order of first use. The string section is the lexer's string
+ * pool, so a string constant's value is its index there. An identifier token stores the index of
+ * its symbol in that section plus 1 (0 for no symbol), any other token its
+ * value zigzag encoded. An int constant stores its decoded value plus 1 (0 if
+ * it overflowed) in place of the value, and a double constant the 8 bytes of
+ * its decoded value; both read back with NO_VALUE as their value. Starts and lines are stored as the difference to the
+ * token before. The line section is the lexer's LineIndex, each line start
+ * stored as the difference to the one before. The lexeme section is the
+ * source text the token offsets point into.
+ */
+public class TokenFileWriter {
+	static final int MAGIC = ('T' << 24) | ('O' << 16) | ('Y' << 8) | 'T';
+	static final int VERSION = 4;
+	static final int FLAG_LEXEMES = 1;
+	private static final int TEXT_BLOCK = 8 * 1024;	// lexeme chars encoded per write
+
+
+	/**
+	 * Writes the tokens of a lexer that has read its whole input
+	 *
+	 * @param lexer - finished lexer, not in streaming mode
+	 * @param file - file to be written
+	 * @param withLexemes - true to include the source text
+	 * @throws IOException
+	 */
+	public static void write(ToyLexer lexer, Path file, boolean withLexemes) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			write(lexer, out, withLexemes);
+		}
+	}
+
+
+	/**
+	 * Writes the tokens of a lexer that has read its whole input
+	 *
+	 * @param lexer - finished lexer, not in streaming mode
+	 * @param stream - stream the token file is written to, left open
+	 * @param withLexemes - true to include the source text
+	 * @throws IOException
+	 */
+	public static void write(ToyLexer lexer, OutputStream stream, boolean withLexemes) throws IOException {
+		if (!lexer.isEOF())
+			throw new IllegalStateException("the lexer has not reached the end of its input");
+		TokenBuffer tokens = lexer.getTokens();
+		LineIndex lines = lexer.getLineIndex();
+		StringPool strings = lexer.getStringPool();
+		CharSequence source = lexer.getSource();
+		CharSequence text = withLexemes ? source : null;
+		int idKind = ToyLexer.ToyToken._id.getTokenNumber();
+		int intKind = ToyLexer.ToyToken._intconstant.getTokenNumber();
+		int doubleKind = ToyLexer.ToyToken._doubleconstant.getTokenNumber();
+
+		// number the symbols in order of first use
+		int maxId = -1;
+		for (int i = 0; i < tokens.size(); i++) {
+			if (tokens.kind(i) == idKind)
+				maxId = Math.max(maxId, tokens.value(i));
+		}
+		int[] symbolIndex = new int[maxId + 1];
+		Arrays.fill(symbolIndex, -1);
+		int[] firstUse = new int[16];
+		int symbolCount = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			int id = tokens.value(i);
+			if (tokens.kind(i) == idKind && id >= 0 && symbolIndex[id] < 0) {
+				if (symbolCount == firstUse.length)
+					firstUse = Arrays.copyOf(firstUse, symbolCount * 2);
+				firstUse[symbolCount] = i;
+				symbolIndex[id] = symbolCount++;
+			}
+		}
+
+		// the token section is sized first so the reader can find the
+		// lexemes without decoding the tokens
+		long tokenBytes = 0;
+		int prevStart = 0, prevLine = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			int kind = tokens.kind(i);
+			tokenBytes += varintSize(kind)
+					+ varintSize(zigzag(tokens.start(i) - prevStart))
+					+ varintSize(tokens.length(i))
+					+ varintSize(zigzag(tokens.line(i) - prevLine));
+			if (kind == intKind)
+				tokenBytes += varintSize(tokens.intValue(i) + 1);
+			else if (kind == doubleKind)
+				tokenBytes += Double.BYTES;
+			else
+				tokenBytes += varintSize(encodeValue(kind == idKind, tokens.value(i), symbolIndex));
+			prevStart = tokens.start(i);
+			prevLine = tokens.line(i);
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(text != null ? FLAG_LEXEMES : 0);
+		writeVarint(out, tokens.size());
+		writeVarint(out, symbolCount);
+		writeVarint(out, strings.size());
+		writeVarint(out, lines.lineCount() - 1);
+		writeVarint(out, tokenBytes);
+		writeVarint(out, text != null ? text.length() : 0);
+
+		// names are encoded from the source into one reused array, so each
+		// goes out in a single write without a String or byte[] per name
+		byte[] bytes = new byte[TEXT_BLOCK * 2];
+		for (int s = 0; s < symbolCount; s++) {
+			int i = firstUse[s];
+			int start = tokens.start(i), end = start + tokens.length(i);
+			if (3 * (end - start) > bytes.length)
+				bytes = new byte[3 * (end - start)];
+			int n = encodeUtf8(source, start, end, bytes);
+			writeVarint(out, tokens.value(i));
+			writeVarint(out, n);
+			out.write(bytes, 0, n);
+		}
+
+		// strings are copied out of the pool into one reused char array,
+		// read through a CharBuffer over it, and encoded the same way
+		char[] chars = new char[TEXT_BLOCK];
+		CharBuffer string = CharBuffer.wrap(chars);
+		for (int s = 0; s < strings.size(); s++) {
+			int len = strings.length(s);
+			if (len > chars.length) {
+				chars = new char[len];
+				string = CharBuffer.wrap(chars);
+			}
+			if (3 * len > bytes.length)
+				bytes = new byte[3 * len];
+			strings.getChars(s, chars, 0);
+			string.limit(len);
+			int n = encodeUtf8(string, 0, len, bytes);
+			writeVarint(out, n);
+			out.write(bytes, 0, n);
+		}
+
+		int prevLineStart = 0;
+		for (int l = 2; l <= lines.lineCount(); l++) {
+			writeVarint(out, lines.lineStart(l) - prevLineStart);
+			prevLineStart = lines.lineStart(l);
+		}
+
+		prevStart = 0;
+		prevLine = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			int kind = tokens.kind(i);
+			writeVarint(out, kind);
+			writeVarint(out, zigzag(tokens.start(i) - prevStart));
+			writeVarint(out, tokens.length(i));
+			writeVarint(out, zigzag(tokens.line(i) - prevLine));
+			if (kind == intKind)
+				writeVarint(out, tokens.intValue(i) + 1);
+			else if (kind == doubleKind)
+				out.writeDouble(tokens.doubleValue(i));
+			else
+				writeVarint(out, encodeValue(kind == idKind, tokens.value(i), symbolIndex));
+			prevStart = tokens.start(i);
+			prevLine = tokens.line(i);
+		}
+
+		if (text != null) {
+			for (int from = 0; from < text.length(); from += TEXT_BLOCK) {
+				int to = Math.min(from + TEXT_BLOCK, text.length());
+				int n = 0;
+				for (int i = from; i < to; i++) {
+					char c = text.charAt(i);
+					bytes[n++] = (byte) (c >>> 8);
+					bytes[n++] = (byte) c;
+				}
+				out.write(bytes, 0, n);
+			}
+		}
+		out.flush();
+	}
+
+
+	/**
+	 * Encodes chars as UTF-8 the way String.getBytes does, with '?' for a
+	 * lone surrogate
+	 *
+	 * @param text - text holding the chars
+	 * @param start - index of the first char
+	 * @param end - index after the last char
+	 * @param dst - array of at least 3 bytes per char
+	 * @return number of bytes written to dst
+	 */
+	static int encodeUtf8(CharSequence text, int start, int end, byte[] dst) {
+		int n = 0;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < 0x80) {
+				dst[n++] = (byte) c;
+			} else if (c < 0x800) {
+				dst[n++] = (byte) (0xC0 | (c >>> 6));
+				dst[n++] = (byte) (0x80 | (c & 0x3F));
+			} else if (!Character.isSurrogate(c)) {
+				dst[n++] = (byte) (0xE0 | (c >>> 12));
+				dst[n++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+				dst[n++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < end
+					&& Character.isLowSurrogate(text.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, text.charAt(++i));
+				dst[n++] = (byte) (0xF0 | (cp >>> 18));
+				dst[n++] = (byte) (0x80 | ((cp >>> 12) & 0x3F));
+				dst[n++] = (byte) (0x80 | ((cp >>> 6) & 0x3F));
+				dst[n++] = (byte) (0x80 | (cp & 0x3F));
+			} else {
+				dst[n++] = '?';
+			}
+		}
+		return n;
+	}
+
+
+	/**
+	 * Returns what is stored for the value of a token
+	 */
+	private static long encodeValue(boolean identifier, int value, int[] symbolIndex) {
+		if (identifier)
+			return (value < 0) ? 0 : symbolIndex[value] + 1;
+		return zigzag(value);
+	}
+
+
+	static long zigzag(int n) {
+		return ((n << 1) ^ (n >> 31)) & 0xFFFFFFFFL;
+	}
+
+
+	static int varintSize(long n) {
+		int size = 1;
+		while ((n >>>= 7) != 0)
+			size++;
+		return size;
+	}
+
+
+	private static void writeVarint(DataOutputStream out, long n) throws IOException {
+		while ((n & ~0x7FL) != 0) {
+			out.writeByte((int) ((n & 0x7F) | 0x80));
+			n >>>= 7;
+		}
+		out.writeByte((int) n);
+	}
+
+} // end of class TokenFileWriter
@@ -0,0 +1,198 @@
+/**
+ * This class holds the tables of the deterministic finite automaton that
+ * ToyLexer uses to scan tokens. Every char is mapped to a char class with a
+ * byte table (chars past ASCII are classified with the Character methods),
+ * and the next state is looked up in a transition table indexed by state and
+ * char class. A state that accepts a token maps to that token, so the
+ * scanner walks the tables as far as it can and keeps the longest token it
+ * has seen.
+ *
+ * The DFA covers every token that starts with a useful char: identifiers and
+ * keywords (all accepted as _id, keywords are told apart afterwards by
+ * ToyLexer.classifyWord), decimal and hex ints, doubles with and without an
+ * exponent, and the one and two char operators. Whitespace and comments are
+ * skipped before the DFA is started. A quote moves START to the STRING
+ * state, which has no transitions: it tells ToyLexer to skip the body of
+ * the string in bulk (and report a string that is never closed as an
+ * _ERROR token) instead of walking it char by char.
+ */
+final class ToyDfa {
+	static final int DEAD = 0;		// no transition
+	static final int START = 1;
+	static final int STRING = 2;	// a string starts, ToyLexer skips its body
+
+	// char classes
+	private static final int OTHER = 0;
+	private static final int LETTER = 1;		// letters that are not one of the below
+	private static final int HEX_LETTER = 2;	// a-d, f, A-D, F
+	private static final int E = 3;				// e, E
+	private static final int X = 4;				// x, X
+	private static final int ZERO = 5;
+	private static final int DIGIT = 6;			// 1-9 and non-ASCII digits
+	private static final int UNDERSCORE = 7;
+	private static final int QUOTE = 8;
+	private static final int OPERATOR_BASE = 9;	// one class per operator char
+
+	private static final char[] OPERATOR_CHARS = {
+		'+', '-', '*', '/', '%', ';', ',', '.', '(', ')', '[', ']', '{', '}',
+		'<', '>', '=', '!', '&', '|'
+	};
+	private static final ToyLexer.ToyToken[] OPERATOR_TOKENS = {
+		ToyLexer.ToyToken._plus, ToyLexer.ToyToken._minus, ToyLexer.ToyToken._multiplication,
+		ToyLexer.ToyToken._division, ToyLexer.ToyToken._mod, ToyLexer.ToyToken._semicolon,
+		ToyLexer.ToyToken._comma, ToyLexer.ToyToken._period, ToyLexer.ToyToken._leftparen,
+		ToyLexer.ToyToken._rightparen, ToyLexer.ToyToken._leftbracket, ToyLexer.ToyToken._rightbracket,
+		ToyLexer.ToyToken._leftbrace, ToyLexer.ToyToken._rightbrace, ToyLexer.ToyToken._less,
+		ToyLexer.ToyToken._greater, ToyLexer.ToyToken._assignop, ToyLexer.ToyToken._not,
+		ToyLexer.ToyToken._ERROR, ToyLexer.ToyToken._ERROR	// a single & or | is an error
+	};
+	private static final String[] TWO_CHAR_OPERATORS = { "<=", ">=", "==", "!=", "&&", "||" };
+	private static final ToyLexer.ToyToken[] TWO_CHAR_TOKENS = {
+		ToyLexer.ToyToken._lessequal, ToyLexer.ToyToken._greaterequal, ToyLexer.ToyToken._equal,
+		ToyLexer.ToyToken._notequal, ToyLexer.ToyToken._and, ToyLexer.ToyToken._or
+	};
+	static final int CLASSES = OPERATOR_BASE + OPERATOR_CHARS.length;
+
+	private static final int MAX_STATES = 64;
+
+	private static final byte[] 				charClasses = new byte[128];
+	private static final byte[] 				transitions = new byte[MAX_STATES * CLASSES];
+	private static final ToyLexer.ToyToken[] 	accepts = new ToyLexer.ToyToken[MAX_STATES];
+	private static int 							stateCount = STRING + 1;
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			charClasses[c] = LETTER;
+			charClasses[Character.toUpperCase(c)] = LETTER;
+		}
+		for (char c : "abcdfABCDF".toCharArray())
+			charClasses[c] = HEX_LETTER;
+		charClasses['e'] = charClasses['E'] = E;
+		charClasses['x'] = charClasses['X'] = X;
+		charClasses['0'] = ZERO;
+		for (char c = '1'; c <= '9'; c++)
+			charClasses[c] = DIGIT;
+		charClasses['_'] = UNDERSCORE;
+		charClasses['"'] = QUOTE;
+		for (int i = 0; i < OPERATOR_CHARS.length; i++)
+			charClasses[OPERATOR_CHARS[i]] = (byte) (OPERATOR_BASE + i);
+
+		int[] letters = { LETTER, HEX_LETTER, E, X };
+		int[] digits = { ZERO, DIGIT };
+		int[] hexDigits = { ZERO, DIGIT, HEX_LETTER, E };
+
+		// identifiers and keywords
+		int id = newState(ToyLexer.ToyToken._id);
+		edges(START, letters, id);
+		edges(id, letters, id);
+		edges(id, digits, id);
+		edge(id, UNDERSCORE, id);
+
+		// ints: 0, decimal and 0x hex (a 0x without hex digits is just the 0)
+		int zero = newState(ToyLexer.ToyToken._intconstant);
+		int decimal = newState(ToyLexer.ToyToken._intconstant);
+		int hexPrefix = newState(null);
+		int hex = newState(ToyLexer.ToyToken._intconstant);
+		edge(START, ZERO, zero);
+		edge(START, DIGIT, decimal);
+		edges(zero, digits, decimal);
+		edges(decimal, digits, decimal);
+		edge(zero, X, hexPrefix);
+		edges(hexPrefix, hexDigits, hex);
+		edges(hex, hexDigits, hex);
+
+		// doubles: digits '.' digits, then an optional exponent. If the
+		// exponent has no digits the double ends before the E.
+		int fraction = newState(ToyLexer.ToyToken._doubleconstant);
+		int exponentE = newState(null);
+		int exponentSign = newState(null);
+		int exponent = newState(ToyLexer.ToyToken._doubleconstant);
+		edge(zero, classOf('.'), fraction);
+		edge(decimal, classOf('.'), fraction);
+		edges(fraction, digits, fraction);
+		edge(fraction, E, exponentE);
+		edges(exponentE, digits, exponent);
+		edge(exponentE, classOf('+'), exponentSign);
+		edge(exponentE, classOf('-'), exponentSign);
+		edges(exponentSign, digits, exponent);
+		edges(exponent, digits, exponent);
+
+		// strings: handed off to ToyLexer at the opening quote
+		edge(START, QUOTE, STRING);
+
+		// operators
+		int[] operatorStates = new int[OPERATOR_CHARS.length];
+		for (int i = 0; i < OPERATOR_CHARS.length; i++) {
+			operatorStates[i] = newState(OPERATOR_TOKENS[i]);
+			edge(START, OPERATOR_BASE + i, operatorStates[i]);
+		}
+		for (int i = 0; i < TWO_CHAR_OPERATORS.length; i++) {
+			String op = TWO_CHAR_OPERATORS[i];
+			int first = operatorStates[classOf(op.charAt(0)) - OPERATOR_BASE];
+			edge(first, classOf(op.charAt(1)), newState(TWO_CHAR_TOKENS[i]));
+		}
+	}
+
+	private ToyDfa() {}
+
+
+	/**
+	 * Returns the state the DFA moves to from state on char c
+	 *
+	 * @param state - current state
+	 * @param c - next char; ToyLexer's EOF_CHAR is a char of class OTHER,
+	 * like any U+FFFF
+	 * @return next state, or DEAD
+	 */
+	static int next(int state, char c) {
+		return transitions[state * CLASSES + classOf(c)];
+	}
+
+
+	/**
+	 * @param state - a DFA state
+	 * @return token accepted in state, or null if it is not accepting
+	 */
+	static ToyLexer.ToyToken accept(int state) {
+		return accepts[state];
+	}
+
+
+	/**
+	 * Returns the char class of c. Non-ASCII chars are letters, digits or
+	 * other, like the hand-written scanner's Character.isLetter and
+	 * Character.isDigit checks.
+	 *
+	 * @param c - char to be classified
+	 * @return char class
+	 */
+	private static int classOf(char c) {
+		if (c < 128)
+			return charClasses[c];
+		if (Character.isLetter(c))
+			return LETTER;
+		if (Character.isDigit(c))
+			return DIGIT;
+		return OTHER;
+	}
+
+
+	private static int newState(ToyLexer.ToyToken accept) {
+		if (stateCount == MAX_STATES)
+			throw new IllegalStateException("too many DFA states");
+		accepts[stateCount] = accept;
+		return stateCount++;
+	}
+
+
+	private static void edge(int from, int charClass, int to) {
+		transitions[from * CLASSES + charClass] = (byte) to;
+	}
+
+
+	private static void edges(int from, int[] charClasses, int to) {
+		for (int c : charClasses)
+			edge(from, c, to);
+	}
+
+} // end of class ToyDfa
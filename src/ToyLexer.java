@@ -1,454 +1,2251 @@
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class implements a lexical analyzer for the Toy language. Tokens are
- * read in and placed into a linked list so that they can be output whenever
+ * read in and placed into a token buffer so that they can be output whenever
  * needed. The lexer spots scanning tokens when the end of the file has been
  * reached.
+ * 
+ * Input is read in large blocks into a char window. The lexer moves a cursor
+ * over the window, so lookahead and pushback are just cursor moves instead of
+ * a call into the reader for every character.
+ * 
+ * In streaming mode tokens are not kept. Each call to nextToken() hands the
+ * caller one token, so memory use depends on the window size and not on the
+ * size of the input.
+ * 
+ * Every token records where its text is in the source, so the text of any
+ * token can be read back as a view without copying it. For a memory mapped
+ * file (see ToyLexer(Path)) the views read the mapping, ASCII bytes as chars,
+ * and the window slides over the input like in streaming mode. Only the
+ * chars decoded from longer UTF-8 sequences are kept on the heap (see
+ * MappedText). For other input outside of streaming mode the window keeps
+ * the whole source and the views read the window. That window is a char
+ * array on the heap: it takes 2 bytes per char of the source, and while it
+ * grows by doubling, the old and new arrays are both live for a moment. A
+ * source of more than MAX_WINDOW chars can then only be lexed in streaming
+ * mode. Token offsets are ints, so outside of streaming mode no source can
+ * be longer than Integer.MAX_VALUE chars.
+ * 
+ * Tokens are scanned by walking the tables of a DFA (see ToyDfa). The older
+ * hand-written scanner can still be picked with setTableDriven(false).
+ * 
+ * Numeric constants are decoded as they are scanned, and string constants
+ * are decoded (escapes included) into a StringPool, so each distinct string
+ * is stored once and its tokens carry only its pool index.
+ * 
+ * Identifiers are entered into a trie unless another SymbolTable is picked
+ * with setSymbolTable().
+ * 
+ * A block comment or string constant that is never closed ends in an _ERROR
+ * token at its start, and a char that starts no token (U+FFFF included) is
+ * an _ERROR token of its own. In fail-fast mode (see setMaxTokenLength) the lexer
+ * gives up on the first token that is too long.
+ * 
+ * Large inputs that fit in memory can be lexed in parallel with lexParallel().
+ * After an edit, applyEdit() re-lexes only the part of the input the edit
+ * can affect.
  */
 public class ToyLexer {
 	private static final char EOF_CHAR = (char) -1;
+	private static final int WINDOW_SIZE = 64 * 1024;
+	private static final int MAX_WINDOW = Integer.MAX_VALUE - 8;	// largest array the VM can allocate
+	private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;	// chars handed to an Appendable at once
+	private static final int MAX_PUSHBACK = 3;
+	private static final int DISCARD_BUFFER_SIZE = 8 * 1024;	// chars of an overlong word read at once
+	private static final int NO_MARK = Integer.MAX_VALUE;
+	private static final int SYMBOL_CHARS_RATIO = 16; // input chars per symbol table spot
+	// buffers larger than these are dropped by reset() instead of kept
+	private static final int MAX_RETAINED_WINDOW = 1 << 20;
+	private static final int MAX_RETAINED_TOKENS = 1 << 17;
+	// chars below 64 the comment and string skippers have to stop at, as bit sets
+	private static final long BLOCK_COMMENT_STOPS = (1L << '*') | (1L << '\r') | (1L << '\n');
+	private static final long STRING_STOPS = (1L << '"') | (1L << '\r') | (1L << '\n');	// and '\\'
+	public static final int NO_VALUE = -1;
+	public static final long INT_OVERFLOW = -1;	// int constants are never negative
+	// doubles with at most this many significant digits and a power of ten
+	// in POWERS_OF_TEN are decoded with one exact multiply or divide
+	private static final int MAX_EXACT_DIGITS = 15;
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
 	
-	private PushbackReader 	source;
-	private List<ToyToken> 	tokens;
-	private Trie 			symTab;
+	// Keywords are classified with a perfect hash on the first char, the
+	// next to last char and the length of a word (see keywordHash).
+	private static final String[] KEYWORDS = {
+		"boolean", "break", "class", "double", "else", "extends", "false",
+		"for", "if", "implements", "int", "interface", "newarray", "println",
+		"readln", "return", "string", "true", "void", "while"
+	};
+	private static final ToyToken[] KEYWORD_TOKENS = {
+		ToyToken._boolean, ToyToken._break, ToyToken._class, ToyToken._double,
+		ToyToken._else, ToyToken._extends, ToyToken._booleanconstant,
+		ToyToken._for, ToyToken._if, ToyToken._implements, ToyToken._int,
+		ToyToken._interface, ToyToken._newarray, ToyToken._println,
+		ToyToken._readln, ToyToken._return, ToyToken._string,
+		ToyToken._booleanconstant, ToyToken._void, ToyToken._while
+	};
+	private static final int KEYWORD_TABLE_SIZE = 32;
+	private static final int MIN_KEYWORD_LENGTH = 2;
+	private static final int MAX_KEYWORD_LENGTH = 10;
+	private static final char[][] keywordChars = new char[KEYWORD_TABLE_SIZE][];
+	private static final ToyToken[] keywordTokens = new ToyToken[KEYWORD_TABLE_SIZE];
+	static {
+		for (int i = 0; i < KEYWORDS.length; i++) {
+			char[] kw = KEYWORDS[i].toCharArray();
+			int h = keywordHash(kw, 0, kw.length);
+			if (keywordChars[h] != null)
+				throw new IllegalStateException("keyword hash collision: " + KEYWORDS[i]);
+			keywordChars[h] = kw;
+			keywordTokens[h] = KEYWORD_TOKENS[i];
+		}
+	}
+	// symbol table holding just the keywords, which every lexer starts from
+	// a copy-on-write view of
+	private static final Trie KEYWORD_IMAGE = keywordImage();
+	
+	private Reader 			source;
+	private boolean 		ownsSource;	// opened by the lexer, closed by reset()
+	private char[] 			window;
+	private boolean 		ownsWindow;	// false if the window is the caller's array
+	private int 			pos;		// cursor into window
+	private int 			limit;		// end of the valid chars in window
+	private int 			mark;		// first char a refill has to keep
+	private long 			windowBase;	// source offset of window[0]
+	private boolean 		inputExhausted;
+	private MappedText 		mappedText;	// text of a mapped file outside of streaming mode, else null
+	private int 			line;
+	private TokenBuffer 	tokens;
+	private LineIndex 		lines;		// not kept in streaming mode
+	private TokenBuffer 	editTokens;	// tokens re-lexed by applyEdit, reused
+	private LineIndex 		editLines;	// line starts re-lexed by applyEdit, reused
+	private long 			crLineStart;	// start of the line a '\r' just ended, else -1
+	private SymbolTable 	symTab;
+	private Trie 			symbolImage;	// what symTab starts from if it is a trie
+	private ConcurrentSymbolTable sharedSymbols;	// null unless shared across lexers
+	private StringPool 		strings;
+	private char[] 			stringBuffer;	// decoded string with escapes, reused
+	private boolean 		internValues;	// give identifiers and strings their values while scanning
+	private boolean 		tableDriven;	// scan with ToyDfa instead of by hand
 	private boolean 		eofReached;
+	private long 			stopOffset;		// no token starting here or later is scanned
+	private boolean 		stopped;
+	private LexMetrics.Recorder metrics;	// null unless setMetrics was called
+	private int 			maxTokenLength;	// 0 for no limit
+	private int 			tokenLimit;		// maxTokenLength, or Integer.MAX_VALUE for no limit
+	private boolean 		failed;			// a token was too long, nothing more is scanned
+	private long 			commentStart;	// source offset of the last comment
+	private int 			commentLine;
+	private boolean 		badComment;		// last comment was unterminated or too long
+	
+	private boolean 		streaming;
+	private ToyToken 		current;		// last token handed out in streaming mode
+	private long 			currentStart;
+	private int 			currentLength;
+	private int 			currentLine;
+	private int 			currentValue;
+	private long 			currentNumber;
+	
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param source - a Reader containing a stream to the input file
+	 */
+	public ToyLexer(Reader source) {
+		this(source, 0);
+	}
+	
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param source - a Reader containing a stream to the input file
+	 * @param sizeHint - expected input size in chars, 0 if unknown
+	 */
+	private ToyLexer(Reader source, long sizeHint) {
+		this(source, new char[WINDOW_SIZE], 0, sizeHint);
+	}
+	
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param source - stream the rest of the input comes from, or null
+	 * @param window - initial window
+	 * @param limit - number of input chars already in the window
+	 * @param sizeHint - expected input size in chars, 0 if unknown
+	 */
+	private ToyLexer(Reader source, char[] window, int limit, long sizeHint) {
+		tokens = new TokenBuffer();
+		lines = new LineIndex();
+		symbolImage = KEYWORD_IMAGE;
+		symTab = new Trie(KEYWORD_IMAGE, (int) Math.min(sizeHint / SYMBOL_CHARS_RATIO, Integer.MAX_VALUE));
+		strings = new StringPool();
+		stringBuffer = new char[64];
+		tableDriven = true;
+		streaming = false;
+		tokenLimit = Integer.MAX_VALUE;
+		start(source, window, limit);
+	}
+	
+	
+	/**
+	 * Points the lexer at the start of an input. Token storage and tables
+	 * are left as they are.
+	 * 
+	 * @param source - stream the rest of the input comes from, or null
+	 * @param window - initial window, the caller's array if source is null
+	 * @param limit - number of input chars already in the window
+	 */
+	private void start(Reader source, char[] window, int limit) {
+		this.source = source;
+		ownsSource = false;
+		this.window = window;
+		ownsWindow = (source != null);
+		pos = 0;
+		this.limit = limit;
+		mark = NO_MARK;
+		windowBase = 0;
+		inputExhausted = (source == null);
+		mappedText = null;
+		line = 1;
+		crLineStart = -1;
+		internValues = true;
+		eofReached = false;	
+		stopOffset = Long.MAX_VALUE;
+		stopped = false;
+		failed = false;
+		badComment = false;
+		current = null;
+		if (metrics != null)
+			metrics.offset = 0;
+	}
+	
+	
+	/**
+	 * Constructor kept for older clients. The reader's pushback buffer is not
+	 * used, the stream is just read in blocks like any other reader.
+	 * 
+	 * @param source - a PushbackReader containing a stream to the input file
+	 */
+	public ToyLexer(PushbackReader source) {
+		this((Reader) source);
+	}
+	
+	
+	/**
+	 * Constructor that lexes a file straight from a memory mapping of it,
+	 * without going through a FileReader. The file is read as UTF-8 (plain
+	 * ASCII bytes are copied into the window as is). Lexemes are read from
+	 * the mapping, so the window does not have to hold the whole file (see
+	 * the class comment).
+	 * 
+	 * @param file - path to the input file
+	 * @throws IOException if the file can't be opened or mapped
+	 */
+	public ToyLexer(Path file) throws IOException {
+		this(new MappedFileReader(file), Files.size(file));
+		ownsSource = true;
+		keepMappedText();
+	}
+	
+	
+	/**
+	 * Constructor for input that is already in memory. The array itself is
+	 * used as the window, so it is not copied and must not be changed while
+	 * the lexer is in use. The lexer never changes it; applyEdit() works on
+	 * a copy.
+	 * 
+	 * @param text - array holding the input
+	 * @param length - number of input chars in text
+	 */
+	public ToyLexer(char[] text, int length) {
+		this(null, text, length, length);
+	}
+	
+	
+	/**
+	 * Makes the lexer ready to lex a new input from a stream, as if it had
+	 * just been constructed, but keeps its window, token buffer, symbol
+	 * table and string pool arrays for reuse (unless a large input made them
+	 * grow past what is worth keeping). The symbol table goes back to the
+	 * keywords, or to the image given to setSymbolImage(). The settings made
+	 * with the set methods are kept. Tokens, lexemes and line indexes of the
+	 * old input must not be used afterwards.
+	 * 
+	 * @param source - a Reader containing a stream to the input file
+	 */
+	public void reset(Reader source) {
+		reset(source, reusableWindow(), 0);
+	}
+	
+	
+	/**
+	 * Makes the lexer ready to lex a file, which is memory mapped like in
+	 * ToyLexer(Path) (see reset(Reader))
+	 * 
+	 * @param file - path to the input file
+	 * @throws IOException if the file can't be opened or mapped
+	 */
+	public void reset(Path file) throws IOException {
+		reset(new MappedFileReader(file), reusableWindow(), 0);
+		ownsSource = true;
+		keepMappedText();
+	}
+	
+	
+	/**
+	 * Makes the lexer ready to lex input that is already in memory, which is
+	 * used as the window like in ToyLexer(char[], int) (see reset(Reader))
+	 * 
+	 * @param text - array holding the input
+	 * @param length - number of input chars in text
+	 */
+	public void reset(char[] text, int length) {
+		reset(null, text, length);
+	}
+	
+	
+	/**
+	 * Lets go of the current input: closes the source if the lexer opened
+	 * it, and drops the window and token buffer if they grew past what
+	 * reset() keeps. The caller's array is never kept. The lexer is left
+	 * at the start of an empty input, so an idle lexer pins no file and no
+	 * large array, and reset() makes it ready again. Tokens, lexemes and
+	 * line indexes of the old input must not be used afterwards.
+	 */
+	public void close() {
+		reset(null, reusableWindow(), 0);
+		ownsWindow = true;	// reusableWindow() returned the lexer's own array
+	}
+	
+	
+	/**
+	 * Clears everything scanned so far and starts on a new input
+	 */
+	private void reset(Reader newSource, char[] newWindow, int newLimit) {
+		if (ownsSource) {
+			try {
+				source.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		if (tokens.capacity() > MAX_RETAINED_TOKENS)
+			tokens = new TokenBuffer();
+		else
+			tokens.clear();
+		lines.truncate(1);
+		editTokens = null;
+		editLines = null;
+		seedSymbolTable();
+		strings.clear();
+		start(newSource, newWindow, newLimit);
+	}
+	
+	
+	/**
+	 * @return the window if it can be reused for a new input, otherwise a
+	 * new one
+	 */
+	private char[] reusableWindow() {
+		return (ownsWindow && window.length <= MAX_RETAINED_WINDOW) ? window : new char[WINDOW_SIZE];
+	}
+	
+	
+	/**
+	 * Lexes a file by splitting it into chunks that are lexed in parallel
+	 * (see lexParallel(char[], int, int)). The whole file is decoded into
+	 * memory first, so it has to fit in a char array.
+	 * 
+	 * @param file - path to the input file
+	 * @param chunks - number of chunks to split the input into
+	 * @return finished lexer holding the tokens and symbol table of the file
+	 * @throws IOException
+	 */
+	public static ToyLexer lexParallel(Path file, int chunks) throws IOException {
+		long size = Files.size(file);
+		if (size > Integer.MAX_VALUE - 8)
+			throw new IOException(file + " is too large to be lexed in memory");
+		
+		char[] text = new char[(int) size + 1];
+		int length = 0;
+		try (Reader in = new MappedFileReader(file)) {
+			int n;
+			while ((n = in.read(text, length, text.length - length)) > 0)
+				length += n;
+		}
+		return lexParallel(text, length, chunks);
+	}
+	
+	
+	/**
+	 * Lexes in-memory input by splitting it into chunks (at line ends) that
+	 * are lexed in parallel on the common fork-join pool. A chunk boundary
+	 * may fall inside a comment, a string constant or a token, so every chunk
+	 * but the first is only a guess. The chunks are then stitched together in
+	 * order: the lexer picks up where the previous chunk really ended and
+	 * re-lexes until it scans a token that the guess for the next chunk also
+	 * has at the same offset. From there on both agree, and the rest of the
+	 * guessed tokens are taken over with their line numbers fixed up.
+	 * Identifiers are entered into the symbol table in source order at the
+	 * end, so the result is the same as lexing the input sequentially.
+	 * 
+	 * @param text - array holding the input
+	 * @param length - number of input chars in text
+	 * @param chunks - number of chunks to split the input into
+	 * @return finished lexer holding the tokens and symbol table of the input
+	 * @throws IOException
+	 */
+	public static ToyLexer lexParallel(char[] text, int length, int chunks) throws IOException {
+		int[] bounds = chunkBounds(text, length, Math.max(chunks, 1));
+		int n = bounds.length - 1;
+		
+		ToyLexer result = new ToyLexer(text, length);
+		result.internValues = false;
+		List<Callable<ToyLexer>> tasks = new ArrayList<Callable<ToyLexer>>();
+		for (int k = 0; k < n; k++) {
+			ToyLexer chunk = (k == 0) ? result : new ToyLexer(text, length);
+			chunk.internValues = false;
+			chunk.resume(bounds[k], 1);
+			if (k < n - 1)
+				chunk.stopOffset = bounds[k + 1];
+			tasks.add(() -> {
+				while (!chunk.eofReached && !chunk.stopped)
+					chunk.scanNextToken();
+				return chunk;
+			});
+		}
+		
+		List<ToyLexer> guesses = new ArrayList<ToyLexer>();
+		try {
+			for (Future<ToyLexer> f : ForkJoinPool.commonPool().invokeAll(tasks))
+				guesses.add(f.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while lexing", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		
+		// stitch the guessed chunks onto the first one
+		for (int k = 1; k < n && !result.eofReached; k++) {
+			ToyLexer guess = guesses.get(k);
+			result.stopped = false;
+			result.stopOffset = (k < n - 1) ? bounds[k + 1] : Long.MAX_VALUE;
+			
+			int sync = result.relexUntilSync(guess.tokens, 0, 0);
+			if (sync < 0)
+				continue;	// no match, the whole chunk was lexed again
+			
+			int lineDelta = result.tokens.line(result.tokens.size() - 1) - guess.tokens.line(sync);
+			result.tokens.append(guess.tokens, sync + 1, guess.tokens.size(), 0, lineDelta);
+			result.lines.append(guess.lines, guess.tokens.start(sync) + guess.tokens.length(sync), 0);
+			result.resume(guess.pos, guess.line + lineDelta);
+			result.eofReached = guess.eofReached;
+			result.failed = guess.failed;
+		}
+		
+		result.stopOffset = Long.MAX_VALUE;
+		result.stopped = false;
+		result.internValues = true;
+		result.internAllValues();
+		return result;
+	}
+	
+	
+	/**
+	 * Applies an edit to the fully lexed input and brings the tokens up to
+	 * date. Lexing restarts after the last token that the edit can't have
+	 * changed (allowing for the lookahead the scanner does past the end of a
+	 * token) and stops as soon as a token lines up with an old token after
+	 * the edit. The old tokens from there on are kept, with their offsets
+	 * and lines moved. If the edit opens or closes a block comment or string,
+	 * no token lines up until the comment or string ends, so those tokens
+	 * are re-lexed too.
+	 * 
+	 * Both ends of the re-lexed range are found by binary search, the new
+	 * tokens are compared with the old ones where they are, and the old
+	 * tokens after the edit get their new offsets and lines as a pending
+	 * shift (see TokenBuffer.replace). What is left that depends on the
+	 * size of the input is moving the text, tokens and line starts after
+	 * the edit, one array copy each.
+	 * 
+	 * The text is changed in place where the window has room, so lexeme
+	 * views taken before the edit should not be used afterwards. If the
+	 * window is the caller's array (see ToyLexer(char[], int)), it is copied
+	 * on the first edit, so that array is never changed. The text of a
+	 * mapped file is copied into a window on the heap on the first edit.
+	 * 
+	 * @param offset - offset where the edit starts
+	 * @param removed - number of chars removed at offset
+	 * @param inserted - text inserted at offset
+	 * @throws IOException
+	 */
+	public void applyEdit(int offset, int removed, CharSequence inserted) throws IOException {
+		if (streaming || !eofReached || !inputExhausted)
+			throw new IllegalStateException("only a fully lexed, non-streaming input can be edited");
+		if (mappedText != null)
+			loadMappedText();
+		if (offset < 0 || removed < 0 || offset + removed > limit)
+			throw new IndexOutOfBoundsException("edit " + offset + "+" + removed + " of " + limit);
+		
+		// last token that ends (with lookahead) before the edit, and the
+		// first old token after it, which the new tokens should line up with
+		int keep = firstTokenEndingAfter(offset - MAX_PUSHBACK) - 1;
+		int firstAfterEdit = firstTokenStartingAt(offset + removed);
+		int restart = (keep >= 0) ? tokens.start(keep) + tokens.length(keep) : 0;
+		int restartLine = lines.lineOf(restart);
+		
+		// splice the text
+		int shift = inserted.length() - removed;
+		int newLimit = limit + shift;
+		if (!ownsWindow || newLimit > window.length) {
+			int size = window.length;
+			if (newLimit > size)
+				size = (int) Math.max(newLimit, Math.min(size * 2L, MAX_WINDOW));
+			window = Arrays.copyOf(window, size);
+			ownsWindow = true;
+		}
+		System.arraycopy(window, offset + removed, window, offset + inserted.length(),
+				limit - offset - removed);
+		for (int i = 0; i < inserted.length(); i++)
+			window[offset + i] = inserted.charAt(i);
+		limit = newLimit;
+		
+		// lex into the edit buffers, against the old tokens left in place
+		if (editTokens == null) {
+			editTokens = new TokenBuffer();
+			editLines = new LineIndex();
+		}
+		TokenBuffer old = tokens;
+		LineIndex oldLines = lines;
+		tokens = editTokens;
+		lines = editLines;
+		tokens.clear();
+		lines.truncate(1);
+		int endLine = line;
+		int sync;
+		try {
+			resume(restart, restartLine);
+			sync = relexUntilSync(old, firstAfterEdit, shift);
+		} finally {
+			tokens = old;
+			lines = oldLines;
+		}
+		
+		if (sync < 0) {
+			tokens.replace(keep + 1, tokens.size(), editTokens, 0, 0);
+			lines.replace(restartLine - 1, lines.lineCount() - 1, editLines, 0);
+			return;
+		}
+		int lineDelta = editTokens.line(editTokens.size() - 1) - tokens.line(sync);
+		int syncEnd = tokens.start(sync) + tokens.length(sync);
+		tokens.replace(keep + 1, sync + 1, editTokens, shift, lineDelta);
+		lines.replace(restartLine - 1, lines.lineOf(syncEnd) - 1, editLines, shift);
+		pos = limit + 1;
+		line = endLine + lineDelta;
+		eofReached = true;
+	}
+	
+	
+	/**
+	 * Copies the text of a mapped file into a window on the heap, where
+	 * applyEdit() can change it
+	 * 
+	 * @throws IOException if the text does not fit in a window
+	 */
+	private void loadMappedText() throws IOException {
+		long length = windowBase + limit;
+		if (length > MAX_WINDOW)
+			throw new IOException("input does not fit in a window of " + MAX_WINDOW + " chars");
+		char[] text = new char[(int) length];
+		mappedText.getChars(0, (int) length, text, 0);
+		pos += windowBase;
+		if (mark != NO_MARK)
+			mark += windowBase;
+		window = text;
+		ownsWindow = true;
+		limit = (int) length;
+		windowBase = 0;
+		mappedText = null;
+	}
+	
+	
+	/**
+	 * @param offset - source offset
+	 * @return index of the first token that ends after offset, or the
+	 * number of tokens if there is none
+	 */
+	private int firstTokenEndingAfter(int offset) {
+		int lo = 0, hi = tokens.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (tokens.start(mid) + tokens.length(mid) <= offset)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+	
+	
+	/**
+	 * @param offset - source offset
+	 * @return index of the first token that starts at or after offset, or
+	 * the number of tokens if there is none
+	 */
+	private int firstTokenStartingAt(int offset) {
+		int lo = 0, hi = tokens.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (tokens.start(mid) < offset)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+	
+	
+	/**
+	 * Picks chunk boundaries for lexParallel(). Each boundary is moved to the
+	 * start of a line.
+	 * 
+	 * @return offsets of the chunk starts, followed by length
+	 */
+	private static int[] chunkBounds(char[] text, int length, int chunks) {
+		int[] bounds = new int[chunks + 1];
+		int n = 0;
+		bounds[n++] = 0;
+		for (int k = 1; k < chunks; k++) {
+			int b = (int) ((long) length * k / chunks);
+			while (b > 0 && b < length && text[b - 1] != '\n')
+				b++;
+			if (b > bounds[n - 1] && b < length)
+				bounds[n++] = b;
+		}
+		bounds[n++] = length;
+		return Arrays.copyOf(bounds, n);
+	}
+	
+	
+	/**
+	 * Scans tokens from the current position until a token scanned lines up
+	 * with one in an earlier token stream for the same text: same kind, same
+	 * length and, after adding shift, the same offset. Once a token matches,
+	 * everything after it scans the same way again.
+	 * 
+	 * @param guess - tokens lexed earlier
+	 * @param from - first index in guess to compare against
+	 * @param shift - amount added to offsets in guess to get current offsets
+	 * @return index in guess of the matching token, or -1 if the lexer hit
+	 * its stop offset or the end of input first
+	 * @throws IOException
+	 */
+	int relexUntilSync(TokenBuffer guess, int from, int shift) throws IOException {
+		int j = from;
+		while (!eofReached && !stopped) {
+			int before = tokens.size();
+			scanNextToken();
+			int last = tokens.size() - 1;
+			if (last < before)
+				continue;
+			
+			int start = tokens.start(last);
+			while (j < guess.size() && guess.start(j) + shift < start)
+				j++;
+			if (j < guess.size() && guess.start(j) + shift == start
+					&& guess.kind(j) == tokens.kind(last) && guess.length(j) == tokens.length(last))
+				return j;
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Moves an in-memory lexer to a new position. Nothing else is reset.
+	 * 
+	 * @param offset - offset of the next char to scan
+	 * @param newLine - line number at that offset
+	 */
+	void resume(int offset, int newLine) {
+		if (metrics != null)
+			metrics.offset = windowBase + offset;	// count re-lexed chars again
+		pos = offset;
+		line = newLine;
+		crLineStart = -1;
+		eofReached = false;
+		stopped = false;
+		failed = false;
+	}
+	
+	
+	/**
+	 * Enters all identifier tokens into the symbol table(s) and all string
+	 * constants into the string pool in order, and stores their values. Used
+	 * when tokens were scanned with internValues turned off.
+	 */
+	private void internAllValues() {
+		int id = ToyToken._id.getTokenNumber();
+		int string = ToyToken._stringconstant.getTokenNumber();
+		for (int i = 0; i < tokens.size(); i++) {
+			if (tokens.kind(i) == id)
+				tokens.setValue(i, internIdentifier(tokens.start(i), tokens.length(i)));
+			else if (tokens.kind(i) == string)
+				tokens.setValue(i, internString(tokens.start(i), tokens.length(i)));
+		}
+	}
+	
+	
+	/**
+	 * Enters an identifier from the window into the symbol table(s)
+	 * 
+	 * @param off - window index of the identifier
+	 * @param len - length of the identifier
+	 * @return symbol ID (from the shared table if there is one)
+	 */
+	private int internIdentifier(int off, int len) {
+		int value = symTab.insert(window, off, len);
+		if (sharedSymbols != null)
+			value = sharedSymbols.intern(window, off, len);
+		return value;
+	}
+	
+	
+	/**
+	 * Decodes a string constant from the window and enters it into the
+	 * string pool. The escapes \" \\ \n and \t are replaced by the char
+	 * they stand for; a backslash before any other char is kept as it is.
+	 * A string without escapes is interned straight from the window.
+	 * 
+	 * @param off - window index of the opening quote
+	 * @param len - length of the string constant, quotes included
+	 * @return index of the string in the pool
+	 */
+	private int internString(int off, int len) {
+		int begin = off + 1, end = off + len - 1;
+		int i = begin;
+		while (i < end && window[i] != '\\')
+			i++;
+		if (i == end)
+			return strings.intern(window, begin, end - begin);
+		
+		if (stringBuffer.length < len)
+			stringBuffer = new char[Math.max(len, stringBuffer.length * 2)];
+		char[] buf = stringBuffer;
+		int n = i - begin;
+		System.arraycopy(window, begin, buf, 0, n);
+		while (i < end) {
+			char c = window[i++];
+			if (c == '\\' && i < end) {
+				switch (window[i]) {
+					case '"':  c = '"';  i++; break;
+					case '\\': c = '\\'; i++; break;
+					case 'n':  c = '\n'; i++; break;
+					case 't':  c = '\t'; i++; break;
+					default:   break;	// not an escape, keep the backslash
+				}
+			}
+			buf[n++] = c;
+		}
+		return strings.intern(buf, 0, n);
+	}
+	
+	
+	/**
+	 * Turns streaming mode on or off. Should be called before the first token
+	 * is scanned. In streaming mode tokens are read with nextToken() (or
+	 * through tokenIterator()/tokenStream()) and are never added to the token
+	 * buffer, and no line index is kept.
+	 * 
+	 * @param streaming - true to hand tokens out one at a time
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+		keepMappedText();
+	}
+	
+	
+	/**
+	 * Has a mapped file source keep its text outside of streaming mode, so
+	 * that lexemes can be read from the mapping
+	 */
+	private void keepMappedText() {
+		if (source instanceof MappedFileReader)
+			mappedText = ((MappedFileReader) source).keepText(!streaming);
+	}
+	
+	
+	/**
+	 * Picks the scanner used for the tokens scanned from now on. Both give
+	 * the same tokens.
+	 * 
+	 * @param tableDriven - true for the table-driven DFA (the default),
+	 * false for the hand-written scanner
+	 */
+	public void setTableDriven(boolean tableDriven) {
+		this.tableDriven = tableDriven;
+	}
+	
+	
+	/**
+	 * Turns fail-fast mode on or off. In fail-fast mode a token, string
+	 * constant or comment longer than maxTokenLength chars is reported as
+	 * an _ERROR token and the lexer stops there, as if the input ended. The
+	 * scan and skip loops stop reading once the limit is passed, so the
+	 * window never holds more than maxTokenLength + 1 chars of one token.
+	 * The rest of an overlong word or number is read up to the next
+	 * delimiter and dropped without being kept, so a malformed or hostile
+	 * input costs bounded memory.
+	 * 
+	 * @param maxTokenLength - longest token allowed, or 0 for no limit
+	 */
+	public void setMaxTokenLength(int maxTokenLength) {
+		if (maxTokenLength < 0)
+			throw new IllegalArgumentException("max token length must not be negative");
+		this.maxTokenLength = maxTokenLength;
+		tokenLimit = (maxTokenLength == 0) ? Integer.MAX_VALUE : maxTokenLength;
+	}
+	
+	
+	/**
+	 * Makes this lexer count what it does into a LexMetrics. The counts are
+	 * added to the metrics in batches and at the end of the input. Should be
+	 * called before the first token is scanned. Lexers made by lexParallel()
+	 * are not counted.
+	 * 
+	 * @param metrics - metrics to report to, or null to stop counting
+	 */
+	public void setMetrics(LexMetrics metrics) {
+		if (metrics == null) {
+			this.metrics = null;
+			return;
+		}
+		if (this.metrics != null && this.metrics.metrics == metrics)
+			return;		// already counting into it, e.g. a reused lexer
+		this.metrics = new LexMetrics.Recorder(metrics);
+		this.metrics.offset = windowBase + pos;
+	}
+	
+	
+	/**
+	 * Makes this lexer intern identifiers into a symbol table shared with
+	 * other lexers. Identifier tokens then carry the shared table's symbol
+	 * ID as their value. The lexer's own symbol table is still filled in, so
+	 * dumpSymbolTable() works as before.
+	 * 
+	 * @param table - shared table, or null to use only the lexer's own table
+	 */
+	public void setSharedSymbols(ConcurrentSymbolTable table) {
+		sharedSymbols = table;
+	}
+	
+	
+	/**
+	 * Makes this lexer enter identifiers into another kind of symbol table
+	 * (see SymbolTable) instead of its trie. The table is cleared and the
+	 * keywords are inserted into it, here and on every reset(). Should be
+	 * called before the first token is scanned. Symbol table images (see
+	 * setSymbolImage) only work with a trie.
+	 * 
+	 * @param table - symbol table for this lexer to own
+	 */
+	public void setSymbolTable(SymbolTable table) {
+		if (!(table instanceof Trie) && symbolImage != KEYWORD_IMAGE)
+			throw new IllegalStateException("symbol table images need a trie symbol table");
+		symTab = table;
+		seedSymbolTable();
+	}
+	
+	
+	/**
+	 * @return the symbol table identifiers are entered into
+	 */
+	public SymbolTable getSymbolTable() {
+		return symTab;
+	}
+	
+	
+	/**
+	 * Makes the symbol table hold the keywords again and nothing else. A
+	 * trie starts from the symbol image, any other table has the keywords
+	 * inserted into it.
+	 */
+	private void seedSymbolTable() {
+		if (symTab instanceof Trie) {
+			((Trie) symTab).reset(symbolImage);
+			return;
+		}
+		symTab.clear();
+		for (String keyword : KEYWORDS)
+			symTab.insert(keyword);
+	}
+	
+	
+	/**
+	 * Scans and returns the next token in streaming mode. Once the end of the
+	 * input is reached every call returns the EOF token.
+	 * 
+	 * @return the next token
+	 * @throws IOException
+	 */
+	public ToyToken nextToken() throws IOException {
+		if (!streaming)
+			throw new IllegalStateException("lexer is not in streaming mode");
+		if (eofReached)
+			return ToyToken._eof;
+		
+		current = null;
+		do {
+			scanNextToken();
+		} while (current == null);
+		return current;
+	}
+	
+	
+	/**
+	 * @return source offset of the token last returned by nextToken()
+	 */
+	public long getTokenStart() { return currentStart; }
+	
+	
+	/**
+	 * @return length of the token last returned by nextToken()
+	 */
+	public int getTokenLength() { return currentLength; }
+	
+	
+	/**
+	 * @return line of the token last returned by nextToken()
+	 */
+	public int getTokenLine() { return currentLine; }
+	
+	
+	/**
+	 * @return symbol ID of the identifier or string pool index of the string
+	 * constant last returned by nextToken(), or NO_VALUE for other tokens
+	 */
+	public int getTokenValue() { return currentValue; }
+	
+	
+	/**
+	 * @return value of the int constant last returned by nextToken(), or
+	 * INT_OVERFLOW if it does not fit in a long
+	 */
+	public long getTokenIntValue() { return currentNumber; }
+	
+	
+	/**
+	 * @return value of the double constant last returned by nextToken()
+	 */
+	public double getTokenDoubleValue() { return Double.longBitsToDouble(currentNumber); }
+	
+	
+	/**
+	 * Returns an iterator over the remaining tokens in streaming mode. The
+	 * EOF token is the last one returned. I/O errors are rethrown as
+	 * UncheckedIOException.
+	 * 
+	 * @return iterator over the token stream
+	 */
+	public Iterator<ToyToken> tokenIterator() {
+		if (!streaming)
+			throw new IllegalStateException("lexer is not in streaming mode");
+		
+		return new Iterator<ToyToken>() {
+			private boolean eofReturned = false;
+			
+			public boolean hasNext() { return !eofReturned; }
+			
+			public ToyToken next() {
+				if (eofReturned)
+					throw new NoSuchElementException();
+				try {
+					ToyToken t = nextToken();
+					eofReturned = (t == ToyToken._eof);
+					return t;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+	
+	
+	/**
+	 * Returns a sequential stream over the remaining tokens in streaming mode
+	 * 
+	 * @return stream of tokens, ending with the EOF token
+	 */
+	public Stream<ToyToken> tokenStream() {
+		Spliterator<ToyToken> split = Spliterators.spliteratorUnknownSize(
+				tokenIterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(split, false);
+	}
+	
+	
+	/**
+	 * Scans the input stream and constructs the next recognized token.
+	 * Whitespace and comments encountered are stripped out.
+	 * 
+	 * The next token scanned is added to the tokens list. A block comment or
+	 * string constant that runs to the end of input is added as an _ERROR
+	 * token covering it, so its start and line are known.
+	 */
+	public void scanNextToken() throws IOException {
+		char curr;
+		ToyToken kind = null;
+		int value = NO_VALUE;
+		long number = 0;
+		int savedPos = pos, savedLine = line, savedSize = tokens.size(), savedLines = lines.lineCount();
+		long savedCrLineStart = crLineStart;
+		curr = failed ? EOF_CHAR : nextUsefulChar();
+		long start = badComment ? commentStart : windowBase + pos - 1;
+		
+		// token belongs to the next chunk, leave it (and the line starts
+		// before it) for the lexer of that chunk
+		if (start >= stopOffset) {
+			pos = savedPos;
+			line = savedLine;
+			tokens.truncate(savedSize);
+			lines.truncate(savedLines);
+			crLineStart = savedCrLineStart;
+			badComment = false;
+			failed = false;
+			stopped = true;
+			return;
+		}
+		if (badComment) {
+			badComment = false;
+			long length = Math.min(windowBase + pos - commentStart, Integer.MAX_VALUE);
+			addToken(ToyToken._ERROR, commentStart, (int) length, commentLine, NO_VALUE, 0);
+			return;
+		}
+		mark = failed ? pos : pos - 1; // keep the token start in the window until it is done
+		int tokenLine = line;
+		
+		if (failed || atEndOfInput()) {
+			kind = ToyToken._eof;
+			eofReached = true;
+		} else if (tableDriven) {
+			kind = scanTableDriven();
+		} else {
+			kind = scanHandWritten(curr);
+		}
+		
+		if (kind == null)
+			kind = ToyToken._ERROR;	// a stray char
+		if (kind != ToyToken._eof && tooLong(windowBase + mark)) {
+			pos = mark + tokenLimit + 1;	// the _ERROR token is the first maxTokenLength + 1 chars
+			if (kind == ToyToken._id || kind == ToyToken._intconstant || kind == ToyToken._doubleconstant)
+				discardRestOfWord();
+			kind = ToyToken._ERROR;
+			failed = true;
+		}
+		
+		// IDENTIFIERS/KEYWORDS/BOOLEAN CONSTANTS
+		// the whole word is in the window from mark to pos, so it is
+		// classified and inserted from there without building a String
+		if (kind == ToyToken._id) {
+			int length = pos - mark;
+			kind = classifyWord(window, mark, length);
+			if (kind == ToyToken._id && internValues)
+				value = internIdentifier(mark, length);
+		}
+		
+		// STRING CONSTANTS
+		// decoded and pooled, so the token only carries the pool index
+		if (kind == ToyToken._stringconstant && internValues)
+			value = internString(mark, pos - mark);
+		
+		// NUMERIC CONSTANTS
+		// decoded from the window too, so no caller has to parse them again
+		if (kind == ToyToken._intconstant)
+			number = decodeInt(window, mark, pos - mark);
+		else if (kind == ToyToken._doubleconstant)
+			number = Double.doubleToRawLongBits(decodeDouble(window, mark, pos - mark));
+		
+		int length = (kind == ToyToken._eof) ? 0 : pos - mark;
+		addToken(kind, windowBase + mark, length, tokenLine, value, number);
+		mark = NO_MARK;
+		if (eofReached && metrics != null)
+			reportMetrics();
+	}
+	
+	
+	/**
+	 * Scans the token starting at mark by walking the DFA tables. The walk
+	 * goes on while there is a transition for the next char and remembers
+	 * where the last accepting state was reached. The cursor is then put back
+	 * to the end of that longest token. A string is handed to skipStringBody
+	 * as soon as the DFA enters its STRING state. In fail-fast mode the walk
+	 * stops once a token one char longer than allowed is accepted.
+	 * 
+	 * @return kind of the token (_id for all words), or null if no token
+	 * starts at mark
+	 * @throws IOException
+	 */
+	private ToyToken scanTableDriven() throws IOException {
+		int state = ToyDfa.next(ToyDfa.START, window[mark]);
+		if (state == ToyDfa.STRING)
+			return skipStringBody() ? ToyToken._stringconstant : ToyToken._ERROR;
+		
+		ToyToken kind = null;
+		int length = 1;		// a char that starts no token is skipped
+		while (state != ToyDfa.DEAD) {
+			ToyToken accept = ToyDfa.accept(state);
+			if (accept != null) {
+				kind = accept;
+				length = pos - mark;
+				if (length > tokenLimit)
+					break;
+			}
+			state = ToyDfa.next(state, readChar());
+		}
+		if (metrics != null)
+			metrics.pushbacks += pos - (mark + length);
+		pos = mark + length;
+		return kind;
+	}
+	
+	
+	/**
+	 * Scans the token starting with curr by hand. In fail-fast mode the word
+	 * and number loops stop once the token is one char longer than allowed.
+	 * 
+	 * @param curr - first char of the token, already read
+	 * @return kind of the token (_id for all words), or null if no token
+	 * starts with curr
+	 * @throws IOException
+	 */
+	private ToyToken scanHandWritten(char curr) throws IOException {
+		char peek;
+		ToyToken kind = null;
+		
+		// HANDLE OPERATORS
+		switch (curr) {
+		
+			// STRING CONSTANTS
+			case '"':
+				kind = skipStringBody() ? ToyToken._stringconstant : ToyToken._ERROR;
+				break;
+			
+			// SINGLE CHAR SYMBOLS/OPERATORS
+			case '+': kind = ToyToken._plus; 			break;
+			case '-': kind = ToyToken._minus; 			break;
+			case '*': kind = ToyToken._multiplication; break;
+			case '/': kind = ToyToken._division; 		break;
+			case '%': kind = ToyToken._mod; 			break;
+			case ';': kind = ToyToken._semicolon; 		break;
+			case ',': kind = ToyToken._comma; 			break;
+			case '.': kind = ToyToken._period; 		break;
+			case '(': kind = ToyToken._leftparen; 		break;
+			case ')': kind = ToyToken._rightparen; 	break;
+			case '[': kind = ToyToken._leftbracket; 	break;
+			case ']': kind = ToyToken._rightbracket; 	break;
+			case '{': kind = ToyToken._leftbrace; 		break;
+			case '}': kind = ToyToken._rightbrace; 	break;
+				
+			// MULTI-CHAR OPERATORS
+			case '<':
+				peek = readChar();
+				if (peek == '=')
+					kind = ToyToken._lessequal;
+				else {
+					pushback();
+					kind = ToyToken._less;
+				}
+				break;
+			case '>':
+				peek = readChar();
+				if (peek == '=')
+					kind = ToyToken._greaterequal;
+				else {
+					pushback();
+					kind = ToyToken._greater;
+				}
+				break;
+			case '=':
+				peek = readChar();
+				if (peek == '=')
+					kind = ToyToken._equal;
+				else {
+					pushback();
+					kind = ToyToken._assignop;
+				}
+				break;
+			case '!':
+				peek = readChar();
+				if (peek == '=')
+					kind = ToyToken._notequal;
+				else {
+					pushback();
+					kind = ToyToken._not;
+				}
+				break;		
+			case '&':
+				peek = readChar();
+				if (peek == '&')
+					kind = ToyToken._and;
+				else {
+					pushback();
+					kind = ToyToken._ERROR;
+				}
+				break;		
+			case '|':
+				peek = readChar();
+				if (peek == '|')
+					kind = ToyToken._or;
+				else {
+					pushback();
+					kind = ToyToken._ERROR;
+				}
+				break;		
+		}
+		
+		// IDENTIFIERS/KEYWORDS/BOOLEAN CONSTANTS
+		if (Character.isLetter(curr)) {
+			while (Character.isLetterOrDigit(peek = readChar()) || peek == '_') {
+				if (pos - mark > tokenLimit)
+					return ToyToken._id;
+			}
+			pushback();
+			kind = ToyToken._id;
+		}
+		// DIGITS
+		else if (Character.isDigit(curr)) {
+			peek = readChar();
+			
+			// HEX INT
+			if (curr == '0' && Character.toUpperCase(peek) == 'X') {
+				curr = readChar();
+				if (isHexDigit(curr)) {
+					kind = ToyToken._intconstant;
+					while (isHexDigit(curr = readChar())) {
+						if (pos - mark > tokenLimit)
+							return ToyToken._intconstant;
+					}
+					pushback();
+				}
+				else {
+					kind = ToyToken._intconstant;
+					pushback();
+					pushback();
+				}
+			}
+			// DOUBLES AND DECIMAL INTS
+			else {
+				pushback();
+				while (Character.isDigit(curr)) {
+					if (pos - mark > tokenLimit)
+						return ToyToken._intconstant;
+					curr = readChar();
+				}
+				
+				// DOUBLE
+				if (curr == '.') {
+					kind = handleDouble();
+				}
+				// DECIMAL INT
+				else {
+					pushback();
+					kind = ToyToken._intconstant;
+				}
+			}
+		}
+		return kind;
+	}
+	
+	
+	/**
+	 * Handles double constants. Method is called ONLY after a '.' has been
+	 * read in from the input stream. 
+	 * 
+	 * @return token for the double constant
+	 */
+	private ToyToken handleDouble() throws IOException {
+		char curr;
+		
+		while (Character.isDigit(curr = readChar())) {
+			if (pos - mark > tokenLimit)
+				return ToyToken._doubleconstant;
+		}
+		
+		// DOUBLE WITH EXPONENT
+		if (Character.toUpperCase(curr) == 'E') {
+			return handleExponent(curr);
+		// DOUBLE WITHOUT EXPONENT	
+		} else {
+			pushback();
+			return ToyToken._doubleconstant;
+		}
+	}
+	
+	
+	/**
+	 * Method consumes valid characters for exponent.
+	 * 
+	 * @param curr - character with value of 'E' or 'e'
+	 * @return token for the double constant
+	 * @throws IOException
+	 */
+	private ToyToken handleExponent(char curr) throws IOException{
+		char peek1, peek2;
+		
+		peek1 = readChar();
+		// E#...#
+		if (Character.isDigit(peek1)) {
+			while (Character.isDigit(peek1 = readChar())) {
+				if (pos - mark > tokenLimit)
+					return ToyToken._doubleconstant;
+			}
+			pushback();
+		// E+ or E-
+		} else if (peek1 == '-' || peek1 == '+') {
+			peek2 = readChar();
+			// at least 1 char after +/- to be valid
+			if (Character.isDigit(peek2)) {
+				while (Character.isDigit(peek2 = readChar())) {
+					if (pos - mark > tokenLimit)
+						return ToyToken._doubleconstant;
+				}
+				pushback();
+			}
+			// invalid exponential form, push back chars that will be used
+			// for other tokens
+			else {
+				pushback(); 	// pushback char after +/-
+				pushback(); 	// pushback + or -
+				pushback(); 	// pushback e or E
+			}
+		// E followed by invalid char, push chars back
+		} else {
+			pushback();
+			pushback();
+		}
+		
+		return ToyToken._doubleconstant;
+	}
+	
+	
+	/**
+	 * Determines if a word is a keyword, a boolean constant or an identifier
+	 * by probing the keyword table with one hash and comparing at most one
+	 * keyword. Nothing is allocated.
+	 * 
+	 * @param buf - array holding the word
+	 * @param off - index of the first char of the word
+	 * @param len - length of the word
+	 * @return keyword token, _booleanconstant, or _id
+	 */
+	static ToyToken classifyWord(char[] buf, int off, int len) {
+		if (len < MIN_KEYWORD_LENGTH || len > MAX_KEYWORD_LENGTH)
+			return ToyToken._id;
+		int h = keywordHash(buf, off, len);
+		char[] kw = keywordChars[h];
+		if (kw == null || kw.length != len)
+			return ToyToken._id;
+		for (int i = 0; i < len; i++) {
+			if (buf[off + i] != kw[i])
+				return ToyToken._id;
+		}
+		return keywordTokens[h];
+	}
+	
+	
+	/**
+	 * Decodes a decimal or 0x hex int constant. The digits are accumulated
+	 * into a long, checking for overflow before each one is added.
+	 * 
+	 * @param buf - array holding the constant
+	 * @param off - index of the first char of the constant
+	 * @param len - length of the constant
+	 * @return value of the constant, or INT_OVERFLOW if it is larger than
+	 * Long.MAX_VALUE
+	 */
+	static long decodeInt(char[] buf, int off, int len) {
+		int end = off + len;
+		long n = 0;
+		if (len > 2 && buf[off] == '0' && (buf[off + 1] == 'x' || buf[off + 1] == 'X')) {
+			for (int i = off + 2; i < end; i++) {
+				if ((n >>> 59) != 0)	// shifting would reach the sign bit
+					return INT_OVERFLOW;
+				n = (n << 4) | Character.digit(buf[i], 16);
+			}
+			return n;
+		}
+		for (int i = off; i < end; i++) {
+			int d = digitValue(buf[i]);
+			if (n > (Long.MAX_VALUE - d) / 10)
+				return INT_OVERFLOW;
+			n = n * 10 + d;
+		}
+		return n;
+	}
+	
+	
+	/**
+	 * Decodes a double constant (digits, '.', digits and an optional
+	 * exponent). When the significant digits fit in MAX_EXACT_DIGITS and
+	 * the power of ten is exact as a double, the result is one multiply or
+	 * divide of two exact doubles and so correctly rounded. Other constants
+	 * are handed to Double.parseDouble, which rounds correctly too but
+	 * allocates.
+	 * 
+	 * @param buf - array holding the constant
+	 * @param off - index of the first char of the constant
+	 * @param len - length of the constant
+	 * @return value of the constant
+	 */
+	static double decodeDouble(char[] buf, int off, int len) {
+		int end = off + len;
+		int i = off;
+		long mantissa = 0;
+		int digits = 0, exponent = 0;
+		boolean fraction = false;
+		for (; i < end; i++) {
+			char c = buf[i];
+			if (c == '.') {
+				fraction = true;
+				continue;
+			}
+			if (c == 'e' || c == 'E')
+				break;
+			int d = digitValue(c);
+			if (mantissa != 0 || d != 0) 	// leading zeros are not significant
+				digits++;
+			if (digits > MAX_EXACT_DIGITS)
+				return parseDouble(buf, off, len);
+			mantissa = mantissa * 10 + d;
+			if (fraction)
+				exponent--;
+		}
+		if (i < end) {
+			i++;
+			boolean negative = buf[i] == '-';
+			if (buf[i] == '-' || buf[i] == '+')
+				i++;
+			int e = 0;
+			for (; i < end; i++)
+				e = Math.min(e * 10 + digitValue(buf[i]), 100000);	// any more is 0 or infinity anyway
+			exponent += negative ? -e : e;
+		}
+		
+		if (mantissa == 0)
+			return 0.0;
+		if (exponent >= 0 && exponent < POWERS_OF_TEN.length)
+			return mantissa * POWERS_OF_TEN[exponent];
+		if (exponent < 0 && -exponent < POWERS_OF_TEN.length)
+			return mantissa / POWERS_OF_TEN[-exponent];
+		return parseDouble(buf, off, len);
+	}
+	
+	
+	/**
+	 * Decodes a double constant with Double.parseDouble, after replacing any
+	 * digits from other scripts with ASCII ones
+	 */
+	private static double parseDouble(char[] buf, int off, int len) {
+		char[] ascii = new char[len];
+		for (int i = 0; i < len; i++) {
+			char c = buf[off + i];
+			ascii[i] = (c < 128) ? c : (char) ('0' + Character.digit(c, 10));
+		}
+		return Double.parseDouble(new String(ascii));
+	}
+	
+	
+	/**
+	 * @param c - a char Character.isDigit accepts
+	 * @return value of the digit
+	 */
+	private static int digitValue(char c) {
+		return (c <= '9') ? c - '0' : Character.digit(c, 10);
+	}
+	
+	
+	/**
+	 * Hash used for the keyword table. The constants were picked so that no
+	 * two keywords collide (the static initializer checks this).
+	 * 
+	 * @param buf - array holding the word
+	 * @param off - index of the first char of the word
+	 * @param len - length of the word, at least 2
+	 * @return slot in the keyword table
+	 */
+	private static int keywordHash(char[] buf, int off, int len) {
+		return (buf[off] * 24 + buf[off + len - 2] * 21 + len) & (KEYWORD_TABLE_SIZE - 1);
+	}
+	
+	
+	/**
+	 * Checks if character is a valid hex digit
+	 * 
+	 * @param c - char to be checked
+	 * @return - true if c is a hex digit, false otherwise
+	 */
+	private boolean isHexDigit(char c) {
+		c = Character.toUpperCase(c);
+		return Character.isDigit(c) || (c == 'A') || (c == 'B') || (c == 'C') ||
+				(c == 'D') || (c == 'E') || (c == 'F');
+	}
+	
+	
+	/**
+	 * Checks if end of file was reached
+	 * 
+	 * @return true is end of file reached, false otherise
+	 */
+	public boolean isEOF() {
+		return eofReached;
+	}
+	
+	
+	/**
+	 * Returns the buffer holding the tokens scanned so far
+	 * 
+	 * @return token buffer
+	 */
+	public TokenBuffer getTokens() {
+		return tokens;
+	}
+	
+	
+	/**
+	 * Returns the index of the line starts scanned so far. It is not kept in
+	 * streaming mode.
+	 * 
+	 * @return line index
+	 */
+	public LineIndex getLineIndex() {
+		if (streaming)
+			throw new IllegalStateException("a streaming lexer does not keep a line index");
+		return lines;
+	}
+	
+	
+	/**
+	 * Returns the text of a token in the token buffer as a view over the
+	 * source. No chars are copied. The view reads the mapping of a mapped
+	 * file, and otherwise the window, which then keeps the whole source at
+	 * 2 bytes per char of heap (see the class comment).
+	 * 
+	 * @param i - index of the token in the token buffer
+	 * @return view over the token's text
+	 */
+	public CharSequence getLexeme(int i) {
+		if (mappedText != null)
+			return new Lexeme(mappedText, tokens.start(i), tokens.length(i));
+		return new Lexeme(window, tokens.start(i), tokens.length(i));
+	}
+	
+	
+	/**
+	 * Returns the whole source read so far as a view over the mapping or
+	 * the window
+	 * 
+	 * @return view over the source text
+	 */
+	public CharSequence getSource() {
+		if (streaming)
+			throw new IllegalStateException("a streaming lexer does not keep its source");
+		if (mappedText != null)
+			return new Lexeme(mappedText, 0, (int) Math.min(windowBase + limit, Integer.MAX_VALUE));
+		return new Lexeme(window, 0, limit);
+	}
+	
+	
+	/**
+	 * Returns the text of a token in the token buffer as a new String
+	 * 
+	 * @param i - index of the token in the token buffer
+	 * @return the token's text
+	 */
+	public String getLexemeString(int i) {
+		if (mappedText != null)
+			return getLexeme(i).toString();
+		return new String(window, tokens.start(i), tokens.length(i));
+	}
+	
+	
+	/**
+	 * Returns the text of the token last returned by nextToken() as a view
+	 * over the window. The view is only good until the next call to
+	 * nextToken(), since the window is reused after that. The text of an
+	 * _ERROR token for an unterminated comment may already be gone.
+	 * 
+	 * @return view over the current token's text
+	 */
+	public CharSequence getTokenLexeme() {
+		if (currentStart < windowBase)
+			throw new IllegalStateException("the token's text is no longer in the window");
+		return new Lexeme(window, (int) (currentStart - windowBase), currentLength);
+	}
+	
+	
+	/**
+	 * Prints out the tokens to System.out
+	 */
+	public void dumpTokens() {
+		try {
+			Writer out = new OutputStreamWriter(System.out);
+			dumpTokens(out);
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	
+	/**
+	 * Writes out the tokens, one line of the source per line. The line
+	 * breaks between two tokens are looked up in the line index. The text
+	 * is built in a large buffer and handed to out a block at a time, so out
+	 * does not need to be buffered.
+	 * 
+	 * @param out - where the tokens are written, left open
+	 * @throws IOException
+	 */
+	public void dumpTokens(Appendable out) throws IOException {
+		String newline = System.lineSeparator();
+		StringBuilder sb = new StringBuilder(OUTPUT_BUFFER_SIZE + 64);
+		int lineAfterLast = 1;	// line the previous token ends on
+		for (int i = 0; i < tokens.size(); i++) {
+			int start = tokens.start(i);
+			for (int n = lines.lineOf(start) - lineAfterLast; n > 0; n--)
+				sb.append(newline);
+			lineAfterLast = lines.lineOf(start + tokens.length(i));
+			
+			ToyToken t = ToyToken.forNumber(tokens.kind(i));
+			if (t != ToyToken._eof)
+				sb.append(t.tokenString).append(' ');
+			if (sb.length() >= OUTPUT_BUFFER_SIZE) {
+				out.append(sb);
+				sb.setLength(0);
+			}
+		}
+		out.append(sb);
+	}
+	
+	
+	/**
+	 * Writes out the tokens as UTF-8 straight to a channel, such as a
+	 * FileChannel opened for writing
+	 * 
+	 * @param channel - where the tokens are written, left open
+	 * @throws IOException
+	 */
+	public void dumpTokens(WritableByteChannel channel) throws IOException {
+		Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), OUTPUT_BUFFER_SIZE);
+		dumpTokens(out);
+		out.flush();
+	}
+	
+	
+	/**
+	 * Gets the first non-whitespace character for the lexer to begin token
+	 * determination. Whitespace and comments are skipped in bulk. A block
+	 * comment that is not closed before the end of input, or a comment that
+	 * is too long in fail-fast mode, sets badComment and ends the skipping.
+	 * 
+	 * @return non-whitespace character, or EOF_CHAR after a bad comment
+	 * @throws IOException
+	 */
+	private char nextUsefulChar() throws IOException {
+		while (true) {
+			skipWhiteSpace();
+			char curr = readChar();
+			if (curr != '/')
+				return curr;
+			
+			// DETERMINE IF SINGLE LINE COMMENT/MULTI-LINE COMMENT/DIVISION OPERATOR
+			char peek = readChar();
+			if (peek != '/' && peek != '*') {
+				pushback();
+				return curr;
+			}
+			commentStart = windowBase + pos - 2;
+			commentLine = line;
+			long startTime = (metrics != null) ? System.nanoTime() : 0;
+			boolean closed = (peek == '/') ? skipLineComment() : skipBlockComment();
+			if (metrics != null) {
+				metrics.commentNanos += System.nanoTime() - startTime;
+				metrics.comments++;
+			}
+			if (!closed || tooLong(commentStart)) {
+				failed = tooLong(commentStart);
+				badComment = true;
+				return EOF_CHAR;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Checks if the token or comment from start to the cursor is longer than
+	 * fail-fast mode allows
+	 * 
+	 * @param start - source offset of the token or comment
+	 * @return true if there is a limit and it is passed
+	 */
+	private boolean tooLong(long start) {
+		return maxTokenLength > 0 && windowBase + Math.min(pos, limit) - start > maxTokenLength;
+	}
+	
+	
+	/**
+	 * Returns where a skip loop has to stop in the window: the end of the
+	 * valid chars, or in fail-fast mode one char past the longest token
+	 * allowed, whichever comes first
+	 * 
+	 * @param start - source offset of the token or comment being skipped
+	 * @return window index to stop at
+	 */
+	private int skipEnd(long start) {
+		if (maxTokenLength == 0)
+			return limit;
+		return (int) Math.max(pos, Math.min(limit, start - windowBase + maxTokenLength + 1));
+	}
+	
+	
+	/*
+	 * The skip methods below walk the window array directly in a tight loop
+	 * and only leave it for the few chars that need work (line breaks and
+	 * the delimiter they look for). Those chars are all below 64, so one
+	 * compare and one bit test against a mask of them (see nextStop) lets
+	 * every other char through. The loop works on locals, which the cursor
+	 * is synced back from before each refill.
+	 */
+	
+	/**
+	 * Skips spaces, tabs and line breaks.
+	 * 
+	 * @throws IOException
+	 */
+	private void skipWhiteSpace() throws IOException {
+		do {
+			char[] w = window;
+			int p = pos, end = limit;
+			while (p < end) {
+				char c = w[p];
+				if (c > ' ')
+					break;
+				if (c == '\n' || c == '\r')
+					lineBreak(c, windowBase + p);
+				else if (c != ' ' && c != '\t')
+					break;
+				p++;
+			}
+			pos = p;
+			if (p < end)
+				return;
+		} while (fill());
+	}
+	
+	
+	/**
+	 * Skips a // comment up to the '\r' or '\n' that ends it (left for
+	 * skipWhiteSpace), or to the end of input. Called after the // has been
+	 * read.
+	 * 
+	 * @return false if the comment is too long, true otherwise
+	 * @throws IOException
+	 */
+	private boolean skipLineComment() throws IOException {
+		do {
+			char[] w = window;
+			int p = pos, end = skipEnd(commentStart);
+			while (p < end && w[p] != '\r' && w[p] != '\n')
+				p++;
+			if (p < end) {
+				pos = p;
+				return true;
+			}
+			pos = p;
+			if (end < limit)
+				return false;
+		} while (fill());
+		return true;
+	}
+	
+	
+	/**
+	 * Skips a block comment up to and including the closing star slash, or
+	 * to the end of input. Called after the opening slash star has been read.
+	 * 
+	 * @return true if the comment was closed, false if it runs to the end of
+	 * input or is too long
+	 * @throws IOException
+	 */
+	private boolean skipBlockComment() throws IOException {
+		do {
+			char[] w = window;
+			int p = pos, end = skipEnd(commentStart);
+			while ((p = nextStop(w, p, end, BLOCK_COMMENT_STOPS)) < end) {
+				char c = w[p];
+				if (c == '*') {
+					if (p + 1 == end)
+						break;	// the next char is not in the window yet
+					if (w[p + 1] == '/') {
+						pos = p + 2;
+						return true;
+					}
+				} else {
+					lineBreak(c, windowBase + p);
+				}
+				p++;
+			}
+			if (end < limit) {
+				pos = end;
+				return false;
+			}
+			pos = p;
+		} while (fill());
+		pos = limit;
+		return false;
+	}
 	
 	
 	/**
-	 * Constructor
+	 * Finds the next char in w[p..end) that is in a set of chars below 64
 	 * 
-	 * @param source - a PushbackReader containing a stream to the input file
+	 * @param w - array to search
+	 * @param p - index to start at
+	 * @param end - index to stop at
+	 * @param stops - bit set of the chars to stop at
+	 * @return index of the first such char, or end
 	 */
-	public ToyLexer(PushbackReader source) {
-		this.source = source;
-		tokens = new LinkedList<ToyToken>();
-		symTab = new Trie();
-		eofReached = false;	
-		insertKeywords(); // initialize the symbol table with the keywords
+	private static int nextStop(char[] w, int p, int end, long stops) {
+		char c;
+		while (p < end && ((c = w[p]) >= 64 || (stops & (1L << c)) == 0))
+			p++;
+		return p;
 	}
 	
 	
 	/**
-	 * Scans the input stream and constructs the next recognized token.
-	 * Whitespace and comments encountered are stripped out.
+	 * Skips the body of a string constant up to and including the closing
+	 * quote. A backslash escapes the char after it, so \" does not close the
+	 * string (a line break after a backslash is still counted). An
+	 * unterminated string runs to the end of input. Called after the opening
+	 * quote (at mark) has been read.
 	 * 
-	 * The next token scanned is added to the tokens list.
+	 * @return true if the string was closed, false if it runs to the end of
+	 * input or is too long
+	 * @throws IOException
 	 */
-	public void scanNextToken() throws IOException {
-		char curr, peek;
-		curr = nextUsefulChar();
-		
-		// HANDLE OPERATORS
-		switch (curr) {
-		
-			// EOF
-			case EOF_CHAR:
-			tokens.add(ToyToken._eof);
-			eofReached = true;
-			break;
-		
-			// STRING CONSTANTS
-			case '"':
-				while ((curr = readChar()) != '"') {}
-				tokens.add(ToyToken._stringconstant);
-				break;
-			
-			// SINGLE CHAR SYMBOLS/OPERATORS
-			case '+': tokens.add(ToyToken._plus); 			break;
-			case '-': tokens.add(ToyToken._minus); 			break;
-			case '*': tokens.add(ToyToken._multiplication); break;
-			case '/': tokens.add(ToyToken._division); 		break;
-			case '%': tokens.add(ToyToken._mod); 			break;
-			case ';': tokens.add(ToyToken._semicolon); 		break;
-			case ',': tokens.add(ToyToken._comma); 			break;
-			case '.': tokens.add(ToyToken._period); 		break;
-			case '(': tokens.add(ToyToken._leftparen); 		break;
-			case ')': tokens.add(ToyToken._rightparen); 	break;
-			case '[': tokens.add(ToyToken._leftbracket); 	break;
-			case ']': tokens.add(ToyToken._rightbracket); 	break;
-			case '{': tokens.add(ToyToken._leftbrace); 		break;
-			case '}': tokens.add(ToyToken._rightbrace); 	break;
-				
-			// MULTI-CHAR OPERATORS
-			case '<':
-				peek = readChar();
-				if (peek == '=')
-					tokens.add(ToyToken._lessequal);
-				else {
-					pushback( peek);
-					tokens.add(ToyToken._less);
-				}
-				break;
-			case '>':
-				peek = readChar();
-				if (peek == '=')
-					tokens.add(ToyToken._greaterequal);
-				else {
-					pushback( peek);
-					tokens.add(ToyToken._greater);
-				}
-				break;
-			case '=':
-				peek = readChar();
-				if (peek == '=')
-					tokens.add(ToyToken._equal);
-				else {
-					pushback( peek);
-					tokens.add(ToyToken._assignop);
-				}
-				break;
-			case '!':
-				peek = readChar();
-				if (peek == '=')
-					tokens.add(ToyToken._notequal);
-				else {
-					pushback( peek);
-					tokens.add(ToyToken._not);
-				}
-				break;		
-			case '&':
-				peek = readChar();
-				if (peek == '&')
-					tokens.add(ToyToken._and);
-				else {
-					pushback( peek);
-					tokens.add(ToyToken._ERROR);
-				}
-				break;		
-			case '|':
-				peek = readChar();
-				if (peek == '|')
-					tokens.add(ToyToken._or);
-				else {
-					pushback( peek);
-					tokens.add(ToyToken._ERROR);
-				}
-				break;		
-		}
-		
-		// IDENTIFIERS/KEYWORDS/BOOLEAN CONSTANTS
-		if (Character.isLetter(curr)) {
-			StringBuilder sb = new StringBuilder();
-			sb.append(curr);
-			peek = readChar();
-			
-			while (Character.isLetterOrDigit(peek) || peek == '_') {
-				sb.append(peek);
-				peek = readChar();
-			}
-			pushback(peek);
-			String s = sb.toString();
-			
-			// determine if token should be id, keyword, or boolean
-			switch (s) {
-			case "true":
-			case "false":
-				tokens.add(ToyToken._booleanconstant); 	break;
-			case "boolean":
-				tokens.add(ToyToken._boolean); 			break;
-			case "break":
-				tokens.add(ToyToken._break); 			break;
-			case "class":
-				tokens.add(ToyToken._class); 			break;
-			case "double":
-				tokens.add(ToyToken._double); 			break;
-			case "else":
-				tokens.add(ToyToken._else); 			break;
-			case "extends":
-				tokens.add(ToyToken._extends); 			break;
-			case "for":
-				tokens.add(ToyToken._for); 				break;
-			case "if":
-				tokens.add(ToyToken._if); 				break;
-			case "implements":
-				tokens.add(ToyToken._implements); 		break;
-			case "int":
-				tokens.add(ToyToken._int); 				break;
-			case "interface":
-				tokens.add(ToyToken._interface); 		break;
-			case "newarray":
-				tokens.add(ToyToken._newarray); 		break;
-			case "println":
-				tokens.add(ToyToken._println); 			break;
-			case "readln":
-				tokens.add(ToyToken._readln); 			break;
-			case "return":
-				tokens.add(ToyToken._return); 			break;
-			case "string":
-				tokens.add(ToyToken._string); 			break;
-			case "void":
-				tokens.add(ToyToken._void); 			break;
-			case "while":
-				tokens.add(ToyToken._while); 			break;
-			default:
-				tokens.add(ToyToken._id);
-					symTab.insert(s);
-			}
-			
-		}
-		// DIGITS
-		else if (Character.isDigit(curr)) {
-			peek = readChar();
-			
-			// HEX INT
-			if (curr == '0' && Character.toUpperCase(peek) == 'X') {
-				curr = readChar();
-				if (isHexDigit(curr)) {
-					tokens.add(ToyToken._intconstant);
-					while (isHexDigit(curr = readChar())) {}
-					pushback(curr);
+	private boolean skipStringBody() throws IOException {
+		do {
+			char[] w = window;
+			int p = pos, end = skipEnd(windowBase + mark);
+			while ((p = nextStringStop(w, p, end)) < end) {
+				char c = w[p];
+				if (c == '\\') {
+					if (p + 1 == end)
+						break;	// the escaped char is not in the window yet
+					p += (w[p + 1] == '\r' || w[p + 1] == '\n') ? 1 : 2;
+					continue;
 				}
-				else {
-					tokens.add(ToyToken._intconstant);
-					pushback(curr);
-					pushback(peek);
+				p++;
+				if (c == '"') {
+					pos = p;
+					return true;
 				}
+				lineBreak(c, windowBase + p - 1);
 			}
-			// DOUBLES AND DECIMAL INTS
-			else {
-				pushback(peek);
-				while (Character.isDigit(curr))
-					curr = readChar();
-				
-				// DOUBLE
-				if (curr == '.') {
-					handleDouble();
-				}
-				// DECIMAL INT
-				else {
-					pushback(curr);
-					tokens.add(ToyToken._intconstant);
-				}
+			if (end < limit) {
+				pos = end;
+				return false;
 			}
+			pos = p;
+		} while (fill());
+		pos = limit;
+		return false;
+	}
+	
+	
+	/**
+	 * Finds the next char in w[p..end) that the string skipper has to stop
+	 * at: a char in STRING_STOPS or a backslash
+	 * 
+	 * @param w - array to search
+	 * @param p - index to start at
+	 * @param end - index to stop at
+	 * @return index of the first such char, or end
+	 */
+	private static int nextStringStop(char[] w, int p, int end) {
+		char c;
+		while (p < end && (c = w[p]) != '\\' && (c >= 64 || (STRING_STOPS & (1L << c)) == 0))
+			p++;
+		return p;
+	}
+	
+	
+	/**
+	 * Counts a line break char and records where the line after it starts.
+	 * A '\n' or a '\r' ends a line, except that the '\n' of a "\r\n" only
+	 * moves the start of the line the '\r' began past itself.
+	 * 
+	 * @param c - '\r' or '\n'
+	 * @param offset - source offset of c
+	 */
+	private void lineBreak(char c, long offset) {
+		if (c == '\n' && crLineStart == offset) {
+			crLineStart = -1;
+			if (!streaming)
+				lines.moveLast((int) offset + 1);
+			return;
 		}
+		crLineStart = (c == '\r') ? offset + 1 : -1;
+		line++;
+		if (!streaming)
+			lines.add((int) offset + 1);
 	}
 	
 	
 	/**
-	 * Handles double constants. Method is called ONLY after a '.' has been
-	 * read in from the input stream. 
+	 * Adds a token to the tokens buffer, or makes it the current token in
+	 * streaming mode
+	 * 
+	 * @param kind - token to be added
+	 * @param start - source offset of the token
+	 * @param length - number of chars in the token
+	 * @param tokenLine - line the token starts on
+	 * @param value - symbol ID for identifiers, string pool index for string
+	 * constants, NO_VALUE otherwise
+	 * @param number - decoded value of a numeric constant, 0 otherwise
 	 */
-	private void handleDouble() throws IOException {
-		char curr;
-		
-		while (Character.isDigit(curr = readChar())) {}
-		
-		// DOUBLE WITH EXPONENT
-		if (Character.toUpperCase(curr) == 'E') {
-			handleExponent(curr);
-		// DOUBLE WITHOUT EXPONENT	
-		} else {
-			tokens.add(ToyToken._doubleconstant);
-			pushback(curr);
+	private void addToken(ToyToken kind, long start, int length, int tokenLine, int value, long number) {
+		if (metrics != null) {
+			metrics.tokens[kind.getTokenNumber()]++;
+			if (++metrics.pending == LexMetrics.RECORD_INTERVAL)
+				reportMetrics();
+		}
+		if (streaming) {
+			current = kind;
+			currentStart = start;
+			currentLength = length;
+			currentLine = tokenLine;
+			currentValue = value;
+			currentNumber = number;
+			return;
 		}
+		if (start > Integer.MAX_VALUE)
+			throw new IllegalStateException("source too large for a token buffer");
+		tokens.add(kind.getTokenNumber(), (int) start, length, tokenLine, value, number);
 	}
 	
 	
 	/**
-	 * Method consumes valid characters for exponent.
+	 * Read next character from the window, refilling it when the cursor
+	 * reaches the end. At the end of input EOF_CHAR is returned, and the
+	 * cursor is left one past the end so that a pushback undoes the read.
+	 * EOF_CHAR is also a valid char (U+FFFF), so the end of input is told
+	 * by the cursor (see atEndOfInput), never by the char.
 	 * 
-	 * @param curr - character with value of 'E' or 'e'
+	 * @return next character, or EOF_CHAR at end of input
 	 * @throws IOException
 	 */
-	private void handleExponent(char curr) throws IOException{
-		char peek1, peek2;
-		
-		peek1 = readChar();
-		// E#...#
-		if (Character.isDigit(peek1)) {
-			while (Character.isDigit(peek1 = readChar())) {}
-			pushback(peek1);
-		// E+ or E-
-		} else if (peek1 == '-' || peek1 == '+') {
-			peek2 = readChar();
-			// at least 1 char after +/- to be valid
-			if (Character.isDigit(peek2)) {
-				while (Character.isDigit(peek2 = readChar())) {}
-				pushback(peek2);
-			}
-			// invalid exponential form, push back chars that will be used
-			// for other tokens
-			else {
-				pushback(peek2); 	// pushback char after +/-
-				pushback(peek1); 	// pushback + or -
-				pushback(curr); 	// pushback e or E
+	private char readChar() throws IOException {
+		if (pos < limit || fill())
+			return window[pos++];
+		pos = limit + 1;
+		return EOF_CHAR;
+	}
+	
+	
+	/**
+	 * @return true if the last readChar() found the end of input
+	 */
+	private boolean atEndOfInput() {
+		return pos > limit;
+	}
+	
+	
+	/**
+	 * Reads the rest of an overlong word or number (letters, digits, '_'
+	 * and '.') and drops it, so fail-fast mode does not buffer it. Chars
+	 * still in the window are skipped over; chars still in the source are
+	 * read into a small scratch array instead of the window. The lexer
+	 * stops after this, so the chars dropped are not part of any token.
+	 * 
+	 * @throws IOException
+	 */
+	private void discardRestOfWord() throws IOException {
+		for (int p = Math.min(pos, limit); p < limit; p++) {
+			if (!isWordChar(window[p]))
+				return;
+		}
+		if (inputExhausted)
+			return;
+		char[] scratch = new char[DISCARD_BUFFER_SIZE];
+		for (int n; (n = source.read(scratch, 0, scratch.length)) > 0; ) {
+			for (int i = 0; i < n; i++) {
+				if (!isWordChar(scratch[i]))
+					return;
 			}
-		// E followed by invalid char, push chars back
-		} else {
-			pushback(peek1);
-			pushback(curr);
+		}
+	}
+	
+	
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+	}
+	
+	
+	/**
+	 * Push back the last character read by moving the cursor back one spot
+	 */
+	private void pushback() {
+		pos--;
+		if (metrics != null)
+			metrics.pushbacks++;
+	}
+	
+	
+	/**
+	 * Adds the counts since the last report to the metrics
+	 */
+	private void reportMetrics() {
+		metrics.report(windowBase + Math.min(pos, limit), symTab);
+	}
+	
+	
+	/**
+	 * Reads the next block of input into the window. In streaming mode, and
+	 * for a mapped file whose text is kept, chars from the mark (or the last
+	 * MAX_PUSHBACK characters) onward are moved to the front of the window
+	 * first so they can still be pushed back, and the rest is dropped.
+	 * Otherwise the window grows and keeps the whole source so that token
+	 * lexemes stay readable. It grows by doubling, up to MAX_WINDOW chars.
+	 * 
+	 * @return true if more characters were read, false at end of input
+	 * @throws IOException if the window would have to grow past MAX_WINDOW
+	 */
+	private boolean fill() throws IOException {
+		if (inputExhausted)
+			return false;
+		
+		boolean slide = streaming || mappedText != null;
+		int keep = slide ? Math.max(0, Math.min(mark, pos - MAX_PUSHBACK)) : 0;
+		if (keep > 0) {
+			System.arraycopy(window, keep, window, 0, limit - keep);
+			windowBase += keep;
+			limit -= keep;
+			pos -= keep;
+			if (mark != NO_MARK)
+				mark -= keep;
+		}
+		if (limit == window.length) {
+			if (window.length >= MAX_WINDOW)
+				throw new IOException("input does not fit in a window of " + MAX_WINDOW
+						+ " chars" + (slide ? " (token too long)" : ", lex it in streaming mode"));
+			window = Arrays.copyOf(window, (int) Math.min(window.length * 2L, MAX_WINDOW));
 		}
 		
-		tokens.add(ToyToken._doubleconstant);
+		int n = source.read(window, limit, window.length - limit);
+		if (n <= 0) {
+			inputExhausted = true;
+			return false;
+		}
+		limit += n;
+		return true;
 	}
 	
 	
 	/**
-	 * Checks if character is a valid hex digit
+	 * Builds the symbol table image every lexer starts from, holding the
+	 * keywords of the Toy language
 	 * 
-	 * @param c - char to be checked
-	 * @return - true if c is a hex digit, false otherwise
+	 * @return shared keyword image
 	 */
-	private boolean isHexDigit(char c) {
-		c = Character.toUpperCase(c);
-		return Character.isDigit(c) || (c == 'A') || (c == 'B') || (c == 'C') ||
-				(c == 'D') || (c == 'E') || (c == 'F');
+	private static Trie keywordImage() {
+		Trie image = new Trie();
+		for (String keyword : KEYWORDS)
+			image.insert(keyword);
+		image.shared = true;
+		return image;
 	}
 	
 	
 	/**
-	 * Checks if end of file was reached
+	 * Returns the pool of decoded string constants. The value of a
+	 * _stringconstant token is its index in the pool.
 	 * 
-	 * @return true is end of file reached, false otherise
+	 * @return string pool of this lexer
 	 */
-	public boolean isEOF() {
-		return eofReached;
+	public StringPool getStringPool() {
+		return strings;
 	}
 	
 	
 	/**
-	 * Prints out the tokens to System.out
+	 * @return new symbol table holding only the keywords, sharing the
+	 * keyword image until a name is inserted
 	 */
-	public void dumpTokens() {
-		Iterator<ToyToken> iter = tokens.iterator();
-		while (iter.hasNext()) {
-			ToyToken t = iter.next();
-			if (t.toString().equals("carriage"))
-				System.out.println();
-			else if (!t.toString().equals("EOF"))
-				System.out.print(t.toString() + " ");
-		}
+	static Trie newSymbolTable() {
+		return new Trie(KEYWORD_IMAGE, 0);
 	}
 	
 	
 	/**
-	 * Checks if parameter c is a whitespace character
+	 * Makes this lexer start from a symbol table image, such as one saved
+	 * with saveSymbolTable() at the end of an earlier build, instead of from
+	 * the keywords alone. The image is not copied until the lexer inserts a
+	 * name the image does not have, so one image can seed any number of
+	 * lexers. Should be called before the first token is scanned. The image
+	 * is kept across reset(). Only works while the symbol table is a trie.
 	 * 
-	 * @param c - char to be checked
-	 * @return true if c is whitespace, false otherwise
+	 * @param image - symbol table image (see Trie.load), which has to hold
+	 * the keywords
 	 */
-	private boolean isWhiteSpace(char c) {
-		if (c == '\r')
-			tokens.add(ToyToken._carriageReturn);
-		return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\r');
+	public void setSymbolImage(Trie image) {
+		if (image != symbolImage) {
+			Trie trie = trieSymbolTable();
+			symbolImage = image;
+			trie.reset(image);
+		}
 	}
 	
 	
 	/**
-	 * Gets the first non-whitespace character for the lexer to begin token
-	 * determination.
+	 * Saves the symbol table as an image file that later lexers can be
+	 * seeded from (see Trie.load and setSymbolImage)
 	 * 
-	 * @return non-whitespace character
+	 * @param file - image file to be written
 	 * @throws IOException
 	 */
-	private char nextUsefulChar() throws IOException {
-		char curr = readChar();
-		char peek;
-		boolean usefulChar = false;
-		
-		do {
-			while (isWhiteSpace(curr)) {
-				curr = readChar();
-			}
-			
-			// DETERMINE IF SINGLE LINE COMMENT/MULTI-LINE COMMENT/DIVISION OPERATOR
-			if (curr == '/') {
-				peek = readChar();
-				switch (peek) {
-				case '/':
-					tokens.add(ToyToken._carriageReturn);
-					while ((curr = readChar()) != '\r') {}
-					curr = readChar();
-					break;
-				case '*':
-					curr = readChar();
-					peek = readChar();
-					while (curr != '*' || peek != '/') {
-						if (curr == '\r')
-							tokens.add(ToyToken._carriageReturn);
-						curr = peek;
-						peek = readChar();
-					}
-					curr = readChar();
-					break;
-				default:
-					pushback(peek);
-					usefulChar = true;
-				}
-			} else {
-				usefulChar = true;
-			}
-			
-		} while (usefulChar == false);
-		
-		
-		return curr;
+	public void saveSymbolTable(Path file) throws IOException {
+		trieSymbolTable().save(file);
 	}
 	
 	
 	/**
-	 * Read next character from input stream
-	 * 
-	 * @return
-	 * @throws IOException
+	 * @return the symbol table, if it is a trie
 	 */
-	private char readChar() throws IOException { return (char)source.read(); }
+	private Trie trieSymbolTable() {
+		if (!(symTab instanceof Trie))
+			throw new IllegalStateException("symbol table images need a trie symbol table");
+		return (Trie) symTab;
+	}
 	
 	
 	/**
-	 * Push back a character into the input stream
+	 * Enters the identifiers of all tokens into another symbol table, such
+	 * as one collecting the names of a whole project
 	 * 
-	 * @param c
-	 * @throws IOException
+	 * @param table - symbol table to insert into
 	 */
-	private void pushback(char c) throws IOException { source.unread((int)c); }
+	void addIdentifiersTo(SymbolTable table) {
+		if (streaming)
+			throw new IllegalStateException("tokens are not kept in streaming mode");
+		int id = ToyToken._id.getTokenNumber();
+		char[] name = (mappedText != null) ? new char[64] : null;
+		for (int i = 0; i < tokens.size(); i++) {
+			if (tokens.kind(i) != id)
+				continue;
+			int start = tokens.start(i), length = tokens.length(i);
+			if (mappedText == null) {
+				table.insert(window, start, length);
+				continue;
+			}
+			if (length > name.length)
+				name = new char[Math.max(length, name.length * 2)];
+			mappedText.getChars(start, start + length, name, 0);
+			table.insert(name, 0, length);
+		}
+	}
 	
 	
 	/**
-	 * Insert the keywords of the Toy language into the symbol table
+	 * Looks up a name in the symbol table without inserting it
+	 * 
+	 * @param name - identifier or keyword to look for
+	 * @return symbol ID of the name, or -1 if it is not in the table
 	 */
-	private void insertKeywords() {
-		symTab.insert("boolean");
-		symTab.insert("break");
-		symTab.insert("class");
-		symTab.insert("double");
-		symTab.insert("else");
-		symTab.insert("extends");
-		symTab.insert("false");
-		symTab.insert("for");
-		symTab.insert("if");
-		symTab.insert("implements");
-		symTab.insert("int");
-		symTab.insert("interface");
-		symTab.insert("newarray");
-		symTab.insert("println");
-		symTab.insert("readln");
-		symTab.insert("return");
-		symTab.insert("string");
-		symTab.insert("true");
-		symTab.insert("void");
-		symTab.insert("while");
+	public int lookupSymbol(String name) {
+		return symTab.lookup(name);
 	}
 	
 	
+	/**
+	 * Prints out the symbol table to System.out
+	 */
 	public void dumpSymbolTable() {
-		symTab.prettyPrint(15);
+		try {
+			Writer out = new OutputStreamWriter(System.out);
+			dumpSymbolTable(out);
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	
+	/**
+	 * Writes out the symbol table (see SymbolTable.dump); a trie is written
+	 * in columns
+	 * 
+	 * @param out - where the table is written, left open
+	 * @throws IOException
+	 */
+	public void dumpSymbolTable(Appendable out) throws IOException {
+		symTab.dump(out);
 	}
 	
 	
 	/**
 	 * This class implements a Trie data structure to be used as a symbol
 	 * table for the lexical analyzer.
+	 * 
+	 * A trie can be saved to an image file and loaded back with a bulk copy
+	 * of its arrays. A new trie can also start from an image in memory
+	 * without copying it: both share the image's arrays, and whichever
+	 * first needs to change them copies them first.
+	 * 
+	 * A probe is a next link followed by an insert.
 	 *
 	 */
-	private static class Trie {
-		private static final int MAX_TRANSITION = 250;
+	static class Trie extends AbstractSymbolTable {
+		private static final int MIN_CAPACITY = 250;
+		private static final int IMAGE_MAGIC = ('T' << 24) | ('O' << 16) | ('Y' << 8) | 'S';
+		private static final int IMAGE_VERSION = 1;
+		private static final int IMAGE_HEADER = 3 * Integer.BYTES;
+		private static final int MAX_CAPACITY_HINT = 1 << 24;
 		private static final int ALPHABETIC_CHARS = 52;
+		private static final int OTHER_START = ALPHABETIC_CHARS;
 		private static final int EMPTY = -1;		
 		private static final char[] alphabet = {'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I'
             , 'J', 'K', 'L', 'M', 'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V'
@@ -460,20 +2257,48 @@ public class ToyLexer {
 		private int[] 	trieSwitch;
 		private char[] 	trieSymbol;
 		private int[] 	trieNext;	
+		private boolean shared;		// arrays may be in use by another trie
+		private int 	capacityHint;	// symbol array size to copy into when unsharing
 
 		
 		/**
 		 * Constructor
 		 */
 		public Trie() {
+			this(MIN_CAPACITY);
+		}
+		
+		
+		/**
+		 * Constructor for a trie that starts with the names of an image. The
+		 * arrays of the image are shared until one of the two tries inserts
+		 * a new name, so the image should not be changed by another thread
+		 * while tries are being made from it.
+		 * 
+		 * @param image - trie to start from
+		 * @param capacityHint - expected number of spots in the symbol array
+		 */
+		Trie(Trie image, int capacityHint) {
+			this.capacityHint = capacityHint;
+			share(image);
+		}
+		
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param capacityHint - expected number of spots in the symbol array
+		 */
+		public Trie(int capacityHint) {
 			nextFreeSpot = 0;
 			
-			trieSwitch = new int [ALPHABETIC_CHARS];
+			trieSwitch = new int [ALPHABETIC_CHARS + 1];
 			for (int i = 0; i < trieSwitch.length; i++)
 				trieSwitch[i] = EMPTY;
 			
-			trieSymbol = new char [MAX_TRANSITION];
-			trieNext = new int[MAX_TRANSITION];
+			int capacity = Math.max(MIN_CAPACITY, Math.min(capacityHint, MAX_CAPACITY_HINT));
+			trieSymbol = new char [capacity];
+			trieNext = new int[capacity];
 			for (int i = 0; i < trieSymbol.length; i++) {
 				trieSymbol[i] = ' ';
 				trieNext[i] = EMPTY;
@@ -484,173 +2309,836 @@ public class ToyLexer {
 		
 		//Prints out the contents of this trie in a columnated format
 		// **WRITTEN BY JACOB BUCHOWIECKI**
-	    public void prettyPrint (int cols) {
+		// Each block of rows is built in a StringBuilder and handed to out
+		// in one piece instead of one printf call per cell.
+	    public void prettyPrint (Appendable out, int cols) throws IOException {
+	        StringBuilder sb = new StringBuilder(16 * 1024);
 	        //Print alphabet and switch array
 	        int i = 0;
 	        while (i < alphabet.length) {
-	            System.out.printf("%7s\t", "");
+	            sb.append("       \t");
 	            for (int j = 0; j < cols; j++) {
-	                if (j + i < alphabet.length) {
-	                    System.out.printf("%3c", alphabet[j + i]);
-	                    System.out.print(' ');
-	                }
+	                if (j + i < alphabet.length)
+	                    appendCell(sb, alphabet[j + i]);
 	            }
-	            System.out.print("\nswitch:\t");
+	            sb.append("\nswitch:\t");
 	            for (int j = 0; j < cols; j++) {
-	                if (j + i < alphabet.length) {
-	                    System.out.printf("%3d", trieSwitch[j + i]);
-	                    System.out.print(' ');
-	                }
+	                if (j + i < alphabet.length)
+	                    appendCell(sb, trieSwitch[j + i]);
 	            }
-	            System.out.print("\n\n");
+	            sb.append("\n\n");
 	            i += cols;
 	        }
-	        //Print out the symbols stored and ptrs
+	        out.append(sb);
+	        sb.setLength(0);
+	        //Print out the symbols stored and ptrs (only the spots in use)
 	        i = 0;
-	        while (i < trieSymbol.length) {
-	            System.out.printf("%7s\t", "");
+	        while (i < nextFreeSpot) {
+	            sb.append("       \t");
 	            for (int j = 0; j < cols; j++) {
-	                if (j + i < trieSymbol.length) {
-	                    System.out.printf("%3d", j + i);
-	                    System.out.print(' ');
-	                }
+	                if (j + i < nextFreeSpot)
+	                    appendCell(sb, j + i);
 	            }
-	            System.out.print("\nsymbol: ");
-	            for (int j = 0; j < cols; j++) {
-	                if (j + i < trieSymbol.length) {
-	                    if (trieSymbol[j + i] != ' ') {
-	                        System.out.printf("%3c", trieSymbol[j + i]);
-	                        System.out.print(' ');
-	                    } else {
-	                        System.out.printf("%3s", "");
-	                        System.out.print(' ');
-	                    }
-
-	                }
+	            sb.append("\nsymbol: ");
+	            for (int j = 0; j < cols; j++) {
+	                if (j + i < nextFreeSpot)
+	                    appendCell(sb, trieSymbol[j + i]);	// a free spot holds ' '
 	            }
-	            System.out.print("\nnext:  \t");
+	            sb.append("\nnext:  \t");
 	            for (int j = 0; j < cols; j++) {
-	                if (j + i < trieNext.length) {
-	                    if (trieNext[j + i] != -1) {
-	                        System.out.printf("%3d", trieNext[j + i]);
-	                        System.out.print(' ');
-	                    } else {
-	                        System.out.printf("%3s", "");
-	                        System.out.print(' ');
-	                    }
-
+	                if (j + i < nextFreeSpot) {
+	                    if (trieNext[j + i] != EMPTY)
+	                        appendCell(sb, trieNext[j + i]);
+	                    else
+	                        sb.append("    ");
 	                }
 	            }
-	            System.out.print("\n\n");
+	            sb.append("\n\n");
 	            i += cols;
+	            if (sb.length() >= OUTPUT_BUFFER_SIZE) {
+	                out.append(sb);
+	                sb.setLength(0);
+	            }
 	        }
+	        out.append(sb);
+	    }
+	    
+	    
+	    /**
+	     * Appends a char right-aligned in a 3 char cell and a space
+	     */
+	    private static void appendCell(StringBuilder sb, char c) {
+	        sb.append("  ").append(c).append(' ');
+	    }
+	    
+	    
+	    /**
+	     * Appends an int right-aligned in a 3 char cell and a space, like
+	     * printf("%3d ") without parsing a format string
+	     */
+	    private static void appendCell(StringBuilder sb, int n) {
+	        int digits = (n < 0) ? 2 : 1;
+	        for (int m = n / 10; m != 0; m /= 10)
+	            digits++;
+	        for (; digits < 3; digits++)
+	            sb.append(' ');
+	        sb.append(n).append(' ');
 	    }
 		
 		
 		/**
-		 * Inserts a string into the trie table.
+		 * Inserts a string into the trie table. The returned symbol ID is the
+		 * position of the name's end marker in the symbol array, so it never
+		 * changes once the name is in the table.
 		 * 
 		 * @param s - string to be inserted
-		 * @return true if s inserted into table, false if s already exists
+		 * @return symbol ID of s, whether it was inserted now or before
+		 */
+		public int insert(String s) {
+			return insert(s.toCharArray(), 0, s.length());
+		}
+		
+		
+		/**
+		 * Inserts a name held in a char array into the trie table.
+		 * 
+		 * @param buf - array holding the name
+		 * @param off - index of the first char of the name
+		 * @param len - length of the name
+		 * @return symbol ID of the name
 		 */
-		void insert(String s) {		
-			int charPos = 0;
-			char c = s.charAt(charPos++);
-			int switchIndex = getSwitchIndex(c);
+		public int insert(char[] buf, int off, int len) {		
+			int switchIndex = getSwitchIndex(buf[off]);
+			// names in the overflow bucket keep their first char in the table
+			int charPos = (switchIndex == OTHER_START) ? 0 : 1;
 			
 			// If switch is undefined using switchIndex, create immediately
 			if (trieSwitch[switchIndex] == EMPTY) {
+				unshare();
 				trieSwitch[switchIndex] = nextFreeSpot;
-				
-				// 1 char name (e.g. "a")
-				if (s.length() == 1)
-					trieSymbol[nextFreeSpot++] = '@';
-				else
-					create(s.substring(1), nextFreeSpot);
-				return;
+				countProbes(0);
+				return create(buf, off + charPos, len - charPos, nextFreeSpot);
 			}
+			int links = 0;
 			
 			int ptr = trieSwitch[switchIndex];
 			// Start with next character in string to traverse symbol table.
 			// If string was one char long, '@' must be next char
-			if (charPos < s.length())
-				c = s.charAt(charPos++);
-			else
-				c = '@';
+			char c = symbolAt(buf, off, len, charPos++);
 			
-			boolean exit = false;
-			while (!exit) {
+			while (true) {
 				if (trieSymbol[ptr] == c) {
-					// If c is not the terminal symbol, move to next spot
-					if (c != '@') {
-						ptr++;
-						// get next char
-						if (charPos < s.length())
-							c = s.charAt(charPos++);
-						else
-							c = '@';
-					} else {
-						// c == '@' so the word already exists therefore exit.
-						exit = true;
-					}
-				} else {	
-					// trieSymbol[ptr] != c but the next spot is defined
-					if (trieNext[ptr] != EMPTY)
-						ptr = trieNext[ptr];
-					// next spot is not defined so set it to nextFreeSpot
-					// and insert what is left of the word.
-					else {
-						trieNext[ptr] = nextFreeSpot;
-						if (s.length() == 1)
-							trieSymbol[nextFreeSpot] = '@';
-						else {
-							create(s.substring(charPos - 1, s.length()), nextFreeSpot);
-						}
-						exit = true;
+					// c == '@' so the word already exists
+					if (c == '@') {
+						countProbes(links);
+						return ptr;
 					}
+					// c is not the terminal symbol, move to next spot
+					ptr++;
+					c = symbolAt(buf, off, len, charPos++);
+				}
+				// trieSymbol[ptr] != c but the next spot is defined
+				else if (trieNext[ptr] != EMPTY) {
+					ptr = trieNext[ptr];
+					links++;
+				}
+				// next spot is not defined so set it to nextFreeSpot
+				// and insert what is left of the word.
+				else {
+					unshare();
+					trieNext[ptr] = nextFreeSpot;
+					countProbes(links);
+					return create(buf, off + charPos - 1, len - charPos + 1, nextFreeSpot);
+				}
+			}
+		}
+		
+		
+		public double getFillRatio() { return (double) nextFreeSpot / trieSymbol.length; }
+		int getSpotsUsed() { return nextFreeSpot; }
+		int getCapacity() { return trieSymbol.length; }
+		
+		
+		/**
+		 * Looks up a string without inserting it.
+		 * 
+		 * @param s - string to look for
+		 * @return symbol ID of s, or EMPTY if s is not in the table
+		 */
+		public int lookup(String s) {
+			return lookup(s.toCharArray(), 0, s.length());
+		}
+		
+		
+		/**
+		 * Looks up a name held in a char array without inserting it.
+		 * 
+		 * @param buf - array holding the name
+		 * @param off - index of the first char of the name
+		 * @param len - length of the name
+		 * @return symbol ID of the name, or EMPTY if it is not in the table
+		 */
+		public int lookup(char[] buf, int off, int len) {
+			if (len == 0)
+				return EMPTY;
+			int switchIndex = getSwitchIndex(buf[off]);
+			int charPos = (switchIndex == OTHER_START) ? 0 : 1;
+			int ptr = trieSwitch[switchIndex];
+			char c = symbolAt(buf, off, len, charPos++);
+			
+			while (ptr != EMPTY) {
+				if (trieSymbol[ptr] == c) {
+					if (c == '@')
+						return ptr;
+					ptr++;
+					c = symbolAt(buf, off, len, charPos++);
+				} else {
+					ptr = trieNext[ptr];
 				}
-			}	
+			}
+			return EMPTY;
 		}
 	    
 		
 		/**
-		 * Inserts a string into an empty location in the symbol table.
+		 * Inserts the rest of a string into an empty location in the symbol
+		 * table, growing the table if needed.
 		 * 
-		 * @param s - string to be inserted
+		 * @param buf - array holding the chars to be inserted
+		 * @param off - index of the first char to insert
+		 * @param len - number of chars to insert
 		 * @param ptr - position where string will be inserted
+		 * @return position of the end marker
+		 */
+		private int create(char[] buf, int off, int len, int ptr) {
+			ensureCapacity(ptr + len + 1);
+			for (int i = 0; i < len; i++) {
+				trieSymbol[ptr++] = buf[off + i];
+			}
+			trieSymbol[ptr] = '@';
+			nextFreeSpot = ptr + 1;
+			return ptr;
+		}
+		
+		
+		/**
+		 * Returns the char of a name at position i, or the end marker '@'
+		 * when i is past the end of the name.
+		 */
+		private static char symbolAt(char[] buf, int off, int len, int i) {
+			return (i < len) ? buf[off + i] : '@';
+		}
+		
+		
+		/**
+		 * Makes this trie hold the names of an image again and nothing else.
+		 * Its own arrays are reused if it has any that are large enough,
+		 * otherwise it shares the image's.
+		 * 
+		 * @param image - trie to start from
+		 */
+		void reset(Trie image) {
+			int n = image.nextFreeSpot;
+			if (shared || trieSymbol.length < n) {
+				capacityHint = Math.max(capacityHint, trieSymbol.length);
+				share(image);
+				return;
+			}
+			System.arraycopy(image.trieSwitch, 0, trieSwitch, 0, trieSwitch.length);
+			System.arraycopy(image.trieSymbol, 0, trieSymbol, 0, n);
+			System.arraycopy(image.trieNext, 0, trieNext, 0, n);
+			if (nextFreeSpot > n) {
+				Arrays.fill(trieSymbol, n, nextFreeSpot, ' ');
+				Arrays.fill(trieNext, n, nextFreeSpot, EMPTY);
+			}
+			nextFreeSpot = n;
+		}
+		
+		
+		/**
+		 * Removes all names. Shared arrays are left to the image and the
+		 * trie gets new ones.
 		 */
-		private void create(String s, int ptr) {
-			for (int i = 0; i < s.length(); i++) {
-				trieSymbol[ptr++] = s.charAt(i);
+		public void clear() {
+			if (shared) {
+				nextFreeSpot = 0;
+				trieSwitch = new int[ALPHABETIC_CHARS + 1];
+				Arrays.fill(trieSwitch, EMPTY);
+				int capacity = Math.max(MIN_CAPACITY, Math.min(Math.max(capacityHint, trieSymbol.length),
+						MAX_CAPACITY_HINT));
+				trieSymbol = new char[capacity];
+				trieNext = new int[capacity];
+				Arrays.fill(trieSymbol, ' ');
+				Arrays.fill(trieNext, EMPTY);
+				shared = false;
+				return;
+			}
+			Arrays.fill(trieSwitch, EMPTY);
+			Arrays.fill(trieSymbol, 0, nextFreeSpot, ' ');
+			Arrays.fill(trieNext, 0, nextFreeSpot, EMPTY);
+			nextFreeSpot = 0;
+		}
+		
+		
+		/**
+		 * Writes out the switch array and the spots in use of the symbol
+		 * and next arrays, 15 to a row
+		 */
+		public void dump(Appendable out) throws IOException {
+			prettyPrint(out, 15);
+		}
+		
+		
+		/**
+		 * Starts sharing the arrays of an image
+		 */
+		private void share(Trie image) {
+			if (!image.shared)
+				image.shared = true;
+			nextFreeSpot = image.nextFreeSpot;
+			trieSwitch = image.trieSwitch;
+			trieSymbol = image.trieSymbol;
+			trieNext = image.trieNext;
+			shared = true;
+		}
+		
+		
+		/**
+		 * Gives this trie arrays of its own if they are shared, before they
+		 * are changed
+		 */
+		private void unshare() {
+			if (!shared)
+				return;
+			int oldLength = trieSymbol.length;
+			int newLength = Math.max(oldLength, Math.min(capacityHint, MAX_CAPACITY_HINT));
+			trieSwitch = trieSwitch.clone();
+			trieSymbol = Arrays.copyOf(trieSymbol, newLength);
+			trieNext = Arrays.copyOf(trieNext, newLength);
+			Arrays.fill(trieSymbol, oldLength, newLength, ' ');
+			Arrays.fill(trieNext, oldLength, newLength, EMPTY);
+			shared = false;
+		}
+		
+		
+		/**
+		 * Writes the trie to an image file: a header (magic "TOYS", version
+		 * and number of spots used), then the switch array, the next array
+		 * and the symbol array, the last two only as far as they are used.
+		 * 
+		 * @param file - image file to be written
+		 * @throws IOException
+		 */
+		void save(Path file) throws IOException {
+			int n = nextFreeSpot;
+			ByteBuffer buf = ByteBuffer.allocate(IMAGE_HEADER
+					+ Integer.BYTES * (trieSwitch.length + n) + Character.BYTES * n);
+			buf.putInt(IMAGE_MAGIC).putInt(IMAGE_VERSION).putInt(n);
+			buf.asIntBuffer().put(trieSwitch).put(trieNext, 0, n);
+			buf.position(buf.position() + Integer.BYTES * (trieSwitch.length + n));
+			buf.asCharBuffer().put(trieSymbol, 0, n);
+			buf.rewind();
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (buf.hasRemaining())
+					channel.write(buf);
+			}
+		}
+		
+		
+		/**
+		 * Reads a trie from an image file written by save(). The file is
+		 * memory mapped and its arrays are copied out in bulk. The trie
+		 * returned is meant to seed other tries (see Trie(Trie, int)).
+		 * 
+		 * @param file - image file
+		 * @return trie holding the names in the image
+		 * @throws IOException if the file is not a valid image
+		 */
+		static Trie load(Path file) throws IOException {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long size = channel.size();
+				if (size < IMAGE_HEADER || size > Integer.MAX_VALUE)
+					throw new IOException(file + " is not a symbol table image");
+				ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				if (buf.getInt() != IMAGE_MAGIC)
+					throw new IOException(file + " is not a symbol table image");
+				if (buf.getInt() != IMAGE_VERSION)
+					throw new IOException(file + " has an unsupported symbol table image version");
+				int n = buf.getInt();
+				int switchLength = ALPHABETIC_CHARS + 1;
+				if (n < 0 || size != IMAGE_HEADER + (long) Integer.BYTES * (switchLength + n)
+						+ (long) Character.BYTES * n)
+					throw new IOException(file + " is truncated or damaged");
+				
+				Trie trie = new Trie(n);
+				trie.ensureCapacity(n);
+				trie.nextFreeSpot = n;
+				buf.asIntBuffer().get(trie.trieSwitch).get(trie.trieNext, 0, n);
+				buf.position(buf.position() + Integer.BYTES * (switchLength + n));
+				buf.asCharBuffer().get(trie.trieSymbol, 0, n);
+				
+				// a damaged link would make insert() and lookup() fail later
+				for (int p : trie.trieSwitch) {
+					if (p < EMPTY || p >= n)
+						throw new IOException(file + " is truncated or damaged");
+				}
+				for (int i = 0; i < n; i++) {
+					if (trie.trieNext[i] < EMPTY || trie.trieNext[i] >= n)
+						throw new IOException(file + " is truncated or damaged");
+				}
+				trie.shared = true;
+				return trie;
 			}
-			trieSymbol[ptr++] = '@';
-			nextFreeSpot = ptr;
+		}
+		
+		
+		/**
+		 * Grows the symbol and next arrays geometrically so that at least
+		 * size spots are available.
+		 * 
+		 * @param size - number of spots needed
+		 */
+		private void ensureCapacity(int size) {
+			if (size <= trieSymbol.length)
+				return;
+			int oldLength = trieSymbol.length;
+			int newLength = Math.max(size, oldLength * 2);
+			trieSymbol = Arrays.copyOf(trieSymbol, newLength);
+			trieNext = Arrays.copyOf(trieNext, newLength);
+			Arrays.fill(trieSymbol, oldLength, newLength, ' ');
+			Arrays.fill(trieNext, oldLength, newLength, EMPTY);
 		}
 		
 		
 		/**
 		 * Returns an index number for the switch array in the symbol table.
+		 * Names that don't start with an ASCII letter share the last slot.
 		 *  
 		 * @param c - character of first element in the string
 		 * @return index corresponding to the character
 		 */
 		private int getSwitchIndex(char c) {
-			if (Character.isUpperCase(c))
-				return ((int) c) - 65;
+			if (c >= 'A' && c <= 'Z')
+				return c - 'A';
+			else if (c >= 'a' && c <= 'z')
+				return c - 'a' + 26;
 			else
-				return ((int) c) - 71;
+				return OTHER_START;
 		}
 		
 		
 	} // end of class Trie
 	
+	
+	/**
+	 * Read-only view over a span of a char array, or of the text of a mapped
+	 * file. The chars are only copied when toString() is called.
+	 */
+	public static class Lexeme implements CharSequence {
+		private final char[] 		buf;	// null if the text is mapped
+		private final MappedText 	text;
+		private final int 			off;
+		private final int 			len;
+		
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param buf - array holding the text
+		 * @param off - index of the first char of the span
+		 * @param len - number of chars in the span
+		 */
+		Lexeme(char[] buf, int off, int len) {
+			this.buf = buf;
+			this.text = null;
+			this.off = off;
+			this.len = len;
+		}
+		
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param text - text of a mapped file
+		 * @param off - offset of the first char of the span
+		 * @param len - number of chars in the span
+		 */
+		Lexeme(MappedText text, int off, int len) {
+			this.buf = null;
+			this.text = text;
+			this.off = off;
+			this.len = len;
+		}
+		
+		
+		public int length() { return len; }
+		
+		
+		public char charAt(int index) {
+			if (index < 0 || index >= len)
+				throw new IndexOutOfBoundsException("index " + index + " of " + len);
+			return (buf != null) ? buf[off + index] : text.charAt(off + index);
+		}
+		
+		
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > len || start > end)
+				throw new IndexOutOfBoundsException("span " + start + ".." + end + " of " + len);
+			if (buf == null)
+				return new Lexeme(text, off + start, end - start);
+			return new Lexeme(buf, off + start, end - start);
+		}
+		
+		
+		public String toString() {
+			if (buf != null)
+				return new String(buf, off, len);
+			char[] chars = new char[len];
+			text.getChars(off, off + len, chars, 0);
+			return new String(chars);
+		}
+		
+	} // end of class Lexeme
+	
+	
+	/**
+	 * The text of a memory mapped file, read from the segments that
+	 * MappedFileReader mapped. Offsets are in chars, like token offsets. An
+	 * ASCII byte is read as the char it stands for, at its byte offset less
+	 * the extra bytes taken by the longer UTF-8 sequences before it. The
+	 * chars decoded from those sequences (and the replacement chars for
+	 * malformed ones) are kept in a table sorted by offset, each with the
+	 * difference between byte and char offsets right after it. A mostly
+	 * ASCII file thus takes next to no heap however large it is; each
+	 * other char takes 14 bytes.
+	 */
+	private static class MappedText {
+		private MappedByteBuffer[] 	segments = new MappedByteBuffer[1];
+		private int 				segmentCount;
+		private int[] 				wideOffsets = new int[16];	// offsets of the chars in the table
+		private char[] 				wideChars = new char[16];
+		private long[] 				byteShifts = new long[16];	// byte offset minus char offset after each
+		private int 				wideCount;
+		private int 				hint;		// entry found by the last lookup
+		
+		
+		/**
+		 * Adds the next segment of the file
+		 * 
+		 * @param segment - mapping of the bytes after the last segment
+		 */
+		private void addSegment(MappedByteBuffer segment) {
+			if (segmentCount == segments.length)
+				segments = Arrays.copyOf(segments, segmentCount * 2);
+			segments[segmentCount++] = segment;
+		}
+		
+		
+		/**
+		 * Adds a char that was not read as an ASCII byte. Chars past what a
+		 * token offset can point to are not kept.
+		 * 
+		 * @param offset - char offset of c
+		 * @param c - the char
+		 * @param byteEnd - byte offset right after the bytes of c
+		 */
+		private void addWide(long offset, char c, long byteEnd) {
+			if (offset > Integer.MAX_VALUE)
+				return;
+			if (wideCount == wideOffsets.length) {
+				int capacity = wideCount * 2;
+				wideOffsets = Arrays.copyOf(wideOffsets, capacity);
+				wideChars = Arrays.copyOf(wideChars, capacity);
+				byteShifts = Arrays.copyOf(byteShifts, capacity);
+			}
+			wideOffsets[wideCount] = (int) offset;
+			wideChars[wideCount] = c;
+			byteShifts[wideCount] = byteEnd - offset - 1;
+			wideCount++;
+		}
+		
+		
+		/**
+		 * @param i - char offset
+		 * @return the char at offset i
+		 */
+		char charAt(int i) {
+			int e = entryAt(i);
+			if (e >= 0 && wideOffsets[e] == i)
+				return wideChars[e];
+			return asciiAt(i + ((e >= 0) ? byteShifts[e] : 0));
+		}
+		
+		
+		/**
+		 * Copies a span of the text into an array
+		 * 
+		 * @param from - offset of the first char
+		 * @param to - offset after the last char
+		 * @param dst - array to copy to
+		 * @param at - index in dst of the first char
+		 */
+		void getChars(int from, int to, char[] dst, int at) {
+			int e = entryAt(from);
+			for (int i = from; i < to; i++) {
+				if (e + 1 < wideCount && wideOffsets[e + 1] == i)
+					e++;
+				if (e >= 0 && wideOffsets[e] == i)
+					dst[at++] = wideChars[e];
+				else
+					dst[at++] = asciiAt(i + ((e >= 0) ? byteShifts[e] : 0));
+			}
+		}
+		
+		
+		private char asciiAt(long b) {
+			return (char) segments[(int) (b >>> MappedFileReader.SEGMENT_SHIFT)]
+					.get((int) (b & (MappedFileReader.SEGMENT_SIZE - 1)));
+		}
+		
+		
+		/**
+		 * Finds the last table entry at or before an offset. Lookups tend to
+		 * move forward through the text, so the entry found last time and
+		 * the one after it are tried before a binary search.
+		 * 
+		 * @param i - char offset
+		 * @return index of the entry, or -1 if there is none
+		 */
+		private int entryAt(int i) {
+			int n = wideCount;
+			if (n == 0 || wideOffsets[0] > i)
+				return -1;
+			int h = hint;
+			if (h < n && wideOffsets[h] <= i) {
+				if (h + 1 == n || wideOffsets[h + 1] > i)
+					return h;
+				if (h + 2 == n || wideOffsets[h + 2] > i)
+					return hint = h + 1;
+			}
+			int lo = 0, hi = n - 1;		// last entry <= i is in [lo, hi]
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if (wideOffsets[mid] <= i)
+					lo = mid;
+				else
+					hi = mid - 1;
+			}
+			return hint = lo;
+		}
+		
+	} // end of class MappedText
+	
+	
+	/**
+	 * Reader over a memory mapped file. Files larger than what a single
+	 * MappedByteBuffer can hold are mapped one segment at a time. ASCII bytes
+	 * are turned into chars directly, anything else is decoded as UTF-8.
+	 * Since the lexer keeps unfinished tokens in its own window, tokens that
+	 * cross a segment boundary need no special handling here.
+	 */
+	private static class MappedFileReader extends Reader {
+		private static final int SEGMENT_SHIFT = 30;
+		private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+		private static final char REPLACEMENT_CHAR = '\uFFFD';
+		
+		private FileChannel 		channel;
+		private final long 			fileSize;
+		private long 				nextSegmentStart;
+		private MappedByteBuffer 	segment;
+		private char 				pendingLowSurrogate;
+		private long 				charsRead;
+		private MappedText 			text;		// null unless the text is kept
+		
+		
+		/**
+		 * Constructor
+		 * 
+		 * @param file - path to the file to be mapped
+		 * @throws IOException
+		 */
+		public MappedFileReader(Path file) throws IOException {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+			fileSize = channel.size();
+			nextSegmentStart = 0;
+			pendingLowSurrogate = 0;
+			if (!mapNextSegment())
+				close();
+		}
+		
+		
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			int n = 0;
+			if (len > 0 && pendingLowSurrogate != 0) {
+				if (text != null)
+					text.addWide(charsRead, pendingLowSurrogate, bytePosition());
+				cbuf[off + n++] = pendingLowSurrogate;
+				pendingLowSurrogate = 0;
+			}
+			
+			while (n < len && hasMoreBytes()) {
+				// ASCII FAST PATH
+				int p = segment.position();
+				int run = Math.min(len - n, segment.remaining());
+				int i = 0;
+				byte b;
+				while (i < run && (b = segment.get(p + i)) >= 0) {
+					cbuf[off + n + i] = (char) b;
+					i++;
+				}
+				segment.position(p + i);
+				n += i;
+				
+				// NON-ASCII BYTE
+				if (i < run) {
+					int k = decodeMultiByte(cbuf, off + n, len - n);
+					if (text != null) {
+						for (int j = n; j < n + k; j++)
+							text.addWide(charsRead + j, cbuf[off + j], bytePosition());
+					}
+					n += k;
+				}
+			}
+			charsRead += n;
+			return (n == 0 && len > 0) ? -1 : n;
+		}
+		
+		
+		/**
+		 * Starts or stops keeping the text of the file as it is read. Has to
+		 * be called before anything is read.
+		 * 
+		 * @param keep - true to keep the text
+		 * @return the text, or null if it is not kept
+		 */
+		MappedText keepText(boolean keep) {
+			text = null;
+			if (keep) {
+				text = new MappedText();
+				if (segment != null)
+					text.addSegment(segment);
+			}
+			return text;
+		}
+		
+		
+		@Override
+		public void close() throws IOException {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+		}
+		
+		
+		/**
+		 * Checks if there are bytes left, moving on to the next segment when
+		 * the current one is used up.
+		 * 
+		 * @return true if at least one more byte can be read
+		 * @throws IOException
+		 */
+		private boolean hasMoreBytes() throws IOException {
+			return (segment != null && segment.hasRemaining()) || mapNextSegment();
+		}
+		
+		
+		/**
+		 * @return offset in the file of the next byte to be read
+		 */
+		private long bytePosition() {
+			return nextSegmentStart - segment.capacity() + segment.position();
+		}
+		
+		
+		/**
+		 * Maps the next segment of the file. The channel is closed as soon as
+		 * the last segment is mapped, mappings stay valid after that.
+		 * 
+		 * @return true if a non-empty segment was mapped
+		 * @throws IOException
+		 */
+		private boolean mapNextSegment() throws IOException {
+			if (channel == null || nextSegmentStart >= fileSize)
+				return false;
+			long size = Math.min(SEGMENT_SIZE, fileSize - nextSegmentStart);
+			segment = channel.map(FileChannel.MapMode.READ_ONLY, nextSegmentStart, size);
+			nextSegmentStart += size;
+			if (text != null)
+				text.addSegment(segment);
+			if (nextSegmentStart >= fileSize)
+				close();
+			return true;
+		}
+		
+		
+		/**
+		 * Decodes one UTF-8 sequence starting at a non-ASCII byte. Malformed
+		 * sequences come out as the replacement character.
+		 * 
+		 * @param cbuf - destination buffer
+		 * @param off - offset to write at
+		 * @param len - room left in the buffer (at least 1)
+		 * @return number of chars written
+		 * @throws IOException
+		 */
+		private int decodeMultiByte(char[] cbuf, int off, int len) throws IOException {
+			int lead = segment.get() & 0xFF;
+			int extra, codePoint;
+			if (lead >= 0xF0 && lead <= 0xF4) {
+				extra = 3; codePoint = lead & 0x07;
+			} else if (lead >= 0xE0) {
+				extra = 2; codePoint = lead & 0x0F;
+			} else if (lead >= 0xC2 && lead < 0xE0) {
+				extra = 1; codePoint = lead & 0x1F;
+			} else {
+				cbuf[off] = REPLACEMENT_CHAR;
+				return 1;
+			}
+			
+			for (int i = 0; i < extra; i++) {
+				if (!hasMoreBytes()) {
+					cbuf[off] = REPLACEMENT_CHAR;
+					return 1;
+				}
+				int b = segment.get(segment.position()) & 0xFF;
+				if ((b & 0xC0) != 0x80) {
+					cbuf[off] = REPLACEMENT_CHAR; // leave b for the next read
+					return 1;
+				}
+				segment.get();
+				codePoint = (codePoint << 6) | (b & 0x3F);
+			}
+			
+			if (!Character.isValidCodePoint(codePoint) ||
+					(codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+				cbuf[off] = REPLACEMENT_CHAR;
+				return 1;
+			}
+			if (Character.isBmpCodePoint(codePoint)) {
+				cbuf[off] = (char) codePoint;
+				return 1;
+			}
+			cbuf[off] = Character.highSurrogate(codePoint);
+			if (len > 1) {
+				cbuf[off + 1] = Character.lowSurrogate(codePoint);
+				return 2;
+			}
+			pendingLowSurrogate = Character.lowSurrogate(codePoint);
+			return 1;
+		}
+		
+	} // end of class MappedFileReader
+	
 	/**
 	 * 
 	 * Tokens are implemented using an enum. Each token is assigned a unique
 	 * number to be used in the future with the syntax analyzer.
 	 *
 	 */
-	private enum ToyToken {
+	public enum ToyToken {
 		_boolean(1, "boolean"),
 		_break(2, "break"),
 		_class(3, "class"),
@@ -698,7 +3186,7 @@ public class ToyLexer {
 		_stringconstant(45, "stringconstant"),
 		_booleanconstant(46, "booleanconstant"),
 		_id(47, "id"),
-		_carriageReturn(48, "carriage"),
+		_carriageReturn(48, "carriage"),	// no longer scanned, see LineIndex
 		_eof(49, "EOF"),
 		_ERROR(50, "ERROR_TOKEN");
 		
@@ -713,6 +3201,22 @@ public class ToyLexer {
 		public int getTokenNumber() { return tokenNum; }		
 		public String toString() { return tokenString; }
 		
+		
+		private static final ToyToken[] byNumber = new ToyToken[values().length + 1];
+		static {
+			for (ToyToken t : values())
+				byNumber[t.tokenNum] = t;
+		}
+		
+		
+		/**
+		 * Returns the token with the given token number
+		 * 
+		 * @param num - token number
+		 * @return the matching token
+		 */
+		public static ToyToken forNumber(int num) { return byNumber[num]; }
+		
 	} // end of enum ToyToken
 
 } // end of class ToyLexer